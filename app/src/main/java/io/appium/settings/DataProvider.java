@@ -0,0 +1,357 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings;
+
+import android.bluetooth.BluetoothAdapter;
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.location.Location;
+import android.net.Uri;
+import android.net.wifi.WifiManager;
+import android.os.Binder;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.os.Process;
+import android.provider.Settings;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import io.appium.settings.helpers.JsonResponseWriter;
+import io.appium.settings.helpers.InMemoryTable;
+import io.appium.settings.notifications.StoredNotification;
+import io.appium.settings.notifications.StoredNotifications;
+import io.appium.settings.receivers.NotificationsReceiver;
+import io.appium.settings.receivers.SmsReader;
+import io.appium.settings.sms.SmsCache;
+import io.appium.settings.sms.StoredSms;
+
+/**
+ * Exposes the device state as tables, which could be queried with
+ * adb shell content query --uri content://io.appium.settings.data/notifications --where "packageName='com.example'"
+ * Notifications and SMS messages could also be read as JSON, which is streamed through a pipe
+ * and thus is not limited by the broadcast result transaction size. For example:
+ * adb exec-out content read --uri 'content://io.appium.settings.data/sms?max=1000'
+ * Query parameters accept the same values as the extras of the corresponding broadcasts.
+ * The provider is exported, so only adb shell, root and this app itself are allowed to call it.
+ * Otherwise any installed app could read SMS messages and notifications on behalf of this app.
+ */
+public class DataProvider extends ContentProvider {
+    private static final String TAG = DataProvider.class.getSimpleName();
+    private static final int ROOT_UID = 0;
+    private static final int SHELL_UID = 2000;
+    public static final String AUTHORITY = "io.appium.settings.data";
+    static final int NOTIFICATIONS = 1;
+    static final int SMS = 2;
+    private static final int LOCATION = 3;
+    private static final int SETTINGS_STATE = 4;
+    private static final Uri INCOMING_SMS = Uri.parse("content://sms/inbox");
+    private static final String MOBILE_DATA_SETTING = "mobile_data";
+    private static final String[] LOCATION_COLUMNS = new String[]{
+            "latitude", "longitude", "altitude", "accuracy", "bearing", "speed", "time", "provider"
+    };
+    private static final String[] SETTINGS_STATE_COLUMNS = new String[]{"name", "value"};
+    private static final UriMatcher URI_MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
+
+    static {
+        URI_MATCHER.addURI(AUTHORITY, "notifications", NOTIFICATIONS);
+        URI_MATCHER.addURI(AUTHORITY, "sms", SMS);
+        URI_MATCHER.addURI(AUTHORITY, "location", LOCATION);
+        URI_MATCHER.addURI(AUTHORITY, "settings_state", SETTINGS_STATE);
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    private static void enforceCallerAccess() {
+        int uid = Binder.getCallingUid();
+        if (uid != ROOT_UID && uid != SHELL_UID && uid != Process.myUid()) {
+            throw new SecurityException(
+                    String.format("The caller with uid %s is not allowed to access %s", uid, AUTHORITY));
+        }
+    }
+
+    /**
+     * @return the intent containing query parameters of the given uri as string extras,
+     * so they could be parsed the same way broadcast extras are
+     */
+    static Intent toRequest(Uri uri) {
+        Intent request = new Intent();
+        for (String name : uri.getQueryParameterNames()) {
+            request.putExtra(name, uri.getQueryParameter(name));
+        }
+        return request;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        enforceCallerAccess();
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException(String.format("%s could only be opened for reading", uri));
+        }
+        int match = URI_MATCHER.match(uri);
+        if (match != NOTIFICATIONS && match != SMS) {
+            throw new FileNotFoundException(String.format("%s is not supported", uri));
+        }
+        ParcelFileDescriptor[] pipe;
+        try {
+            pipe = ParcelFileDescriptor.createPipe();
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot create a pipe", e);
+            throw new FileNotFoundException(e.getMessage());
+        }
+        new Thread(new ResponseStreamer(getContext(), match, toRequest(uri), pipe[1]),
+                TAG + "-" + uri.getLastPathSegment()).start();
+        return pipe[0];
+    }
+
+    static class ResponseStreamer implements Runnable {
+        private final Context context;
+        private final int match;
+        private final Intent request;
+        private final ParcelFileDescriptor output;
+
+        /**
+         * @param match the uri match, which is either {@link #NOTIFICATIONS} or {@link #SMS}
+         * @param output the write end of the pipe, which is closed once the response is streamed
+         */
+        ResponseStreamer(Context context, int match, Intent request, ParcelFileDescriptor output) {
+            this.context = context;
+            this.match = match;
+            this.request = request;
+            this.output = output;
+        }
+
+        private void write(JsonResponseWriter writer) {
+            switch (match) {
+                case NOTIFICATIONS:
+                    if (!NotificationsReceiver.isNotificationServiceEnabled(context)) {
+                        throw new IllegalStateException(NotificationsReceiver.NO_ACCESS_ERROR);
+                    }
+                    NotificationsReceiver.writeResponse(request, writer);
+                    break;
+                case SMS:
+                    SmsReader.writeResponse(context, request, writer);
+                    break;
+                default:
+                    throw new IllegalStateException(String.format("Unexpected uri match %s", match));
+            }
+        }
+
+        private void closeWithError(String message) {
+            Log.e(TAG, message);
+            try {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                    // The reader gets the message in the thrown exception
+                    output.closeWithError(message);
+                } else {
+                    output.close();
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot close the pipe", e);
+            }
+        }
+
+        /**
+         * Writes the response to the sink as it is being built.
+         *
+         * @param sink the writer to stream the response to
+         * @return the error to report to the reader or null if the response has been written
+         * or the reader has gone away
+         */
+        @Nullable
+        String stream(Writer sink) {
+            JsonResponseWriter writer = new JsonResponseWriter(sink);
+            try {
+                write(writer);
+                writer.flush();
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                return e.getMessage();
+            } catch (IOException e) {
+                // The reader has most likely gone away
+                Log.w(TAG, "Cannot stream the response", e);
+            } catch (Exception e) {
+                Log.e(TAG, "Cannot build the response", e);
+                return "Cannot build the response. Check the logcat output for more details.";
+            }
+            return null;
+        }
+
+        @Override
+        public void run() {
+            Writer sink;
+            try {
+                sink = new OutputStreamWriter(new ParcelFileDescriptor.AutoCloseOutputStream(output), "UTF-8");
+            } catch (IOException e) {
+                closeWithError(e.getMessage());
+                return;
+            }
+            String error = stream(sink);
+            if (error != null) {
+                closeWithError(error);
+                return;
+            }
+            try {
+                sink.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot close the pipe", e);
+            }
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getType(Uri uri) {
+        switch (URI_MATCHER.match(uri)) {
+            case NOTIFICATIONS:
+            case SMS:
+            case LOCATION:
+            case SETTINGS_STATE:
+                return ContentResolver.CURSOR_DIR_BASE_TYPE + "/vnd." + AUTHORITY + "." + uri.getLastPathSegment();
+            default:
+                return null;
+        }
+    }
+
+    private List<Object[]> getNotificationRows() {
+        if (!NotificationsReceiver.isNotificationServiceEnabled(getContext())) {
+            throw new SecurityException(NotificationsReceiver.NO_ACCESS_ERROR);
+        }
+        List<Object[]> rows = new ArrayList<>();
+        for (StoredNotification item : StoredNotifications.getInstance().getSnapshot().toList()) {
+            rows.add(item.toTableRow());
+        }
+        return rows;
+    }
+
+    private List<Object[]> getLocationRows() {
+        Location location = LocationTracker.getInstance().getLocation(getContext());
+        if (location == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(new Object[]{
+                location.getLatitude(), location.getLongitude(), location.getAltitude(),
+                location.getAccuracy(), location.getBearing(), location.getSpeed(),
+                location.getTime(), location.getProvider()
+        });
+    }
+
+    private List<Object[]> getSettingsStateRows() {
+        Context context = getContext();
+        ContentResolver resolver = context.getContentResolver();
+        List<Object[]> rows = new ArrayList<>();
+        WifiManager wifiManager = (WifiManager) context.getApplicationContext()
+                .getSystemService(Context.WIFI_SERVICE);
+        if (wifiManager != null) {
+            rows.add(new Object[]{"wifi", wifiManager.isWifiEnabled() ? 1 : 0});
+        }
+        BluetoothAdapter bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+        if (bluetoothAdapter != null) {
+            rows.add(new Object[]{"bluetooth", bluetoothAdapter.isEnabled() ? 1 : 0});
+        }
+        rows.add(new Object[]{"data", Settings.Global.getInt(resolver, MOBILE_DATA_SETTING, 0)});
+        rows.add(new Object[]{"airplaneMode", Settings.Global.getInt(resolver, Settings.Global.AIRPLANE_MODE_ON, 0)});
+        rows.add(new Object[]{"animatorDurationScale",
+                Settings.Global.getFloat(resolver, Settings.Global.ANIMATOR_DURATION_SCALE, 1)});
+        rows.add(new Object[]{"transitionAnimationScale",
+                Settings.Global.getFloat(resolver, Settings.Global.TRANSITION_ANIMATION_SCALE, 1)});
+        rows.add(new Object[]{"windowAnimationScale",
+                Settings.Global.getFloat(resolver, Settings.Global.WINDOW_ANIMATION_SCALE, 1)});
+        rows.add(new Object[]{"locale", Locale.getDefault().toString()});
+        rows.add(new Object[]{"notificationAccess",
+                NotificationsReceiver.isNotificationServiceEnabled(context) ? 1 : 0});
+        return rows;
+    }
+
+    /**
+     * Selection and sortOrder arguments are evaluated by SQLite, see {@link InMemoryTable}.
+     * SMS queries are forwarded to the system SMS provider unless the SMS cache contains all messages.
+     *
+     * @throws IllegalArgumentException if the uri is not supported
+     * @throws android.database.sqlite.SQLiteException if the query arguments are not valid
+     */
+    @Nullable
+    @Override
+    public Cursor query(Uri uri, @Nullable String[] projection, @Nullable String selection,
+                        @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        enforceCallerAccess();
+        List<Object[]> rows;
+        String[] columns;
+        switch (URI_MATCHER.match(uri)) {
+            case NOTIFICATIONS:
+                rows = getNotificationRows();
+                columns = StoredNotification.TABLE_COLUMNS;
+                break;
+            case SMS:
+                SmsCache.Snapshot snapshot = SmsCache.getInstance().getFreshSnapshot(getContext());
+                if (snapshot == null || !snapshot.isComplete()) {
+                    return getContext().getContentResolver().query(INCOMING_SMS,
+                            projection == null ? StoredSms.PROJECTION : projection,
+                            selection, selectionArgs, sortOrder);
+                }
+                rows = new ArrayList<>();
+                for (StoredSms item : snapshot.getItems()) {
+                    rows.add(item.toTableRow());
+                }
+                columns = StoredSms.PROJECTION;
+                break;
+            case LOCATION:
+                rows = getLocationRows();
+                columns = LOCATION_COLUMNS;
+                break;
+            case SETTINGS_STATE:
+                rows = getSettingsStateRows();
+                columns = SETTINGS_STATE_COLUMNS;
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("%s is not supported", uri));
+        }
+        return InMemoryTable.query(columns, rows, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(Uri uri, @Nullable ContentValues values) {
+        throw new UnsupportedOperationException("The provider is read-only");
+    }
+
+    @Override
+    public int delete(Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("The provider is read-only");
+    }
+
+    @Override
+    public int update(Uri uri, @Nullable ContentValues values, @Nullable String selection,
+                      @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("The provider is read-only");
+    }
+}
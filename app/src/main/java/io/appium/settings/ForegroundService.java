@@ -23,12 +23,25 @@ import android.os.IBinder;
 import android.util.Log;
 
 import io.appium.settings.helpers.NotificationHelpers;
+import io.appium.settings.sms.SmsCache;
 
 public class ForegroundService extends Service {
     private static final String TAG = "APPIUM SERVICE";
     public static final String ACTION_START = "start";
     public static final String ACTION_STOP = "stop";
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        SmsCache.getInstance().start(this);
+    }
+
+    @Override
+    public void onDestroy() {
+        SmsCache.getInstance().stop();
+        super.onDestroy();
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return null;
@@ -26,16 +26,24 @@ import android.location.LocationManager;
 import android.location.LocationProvider;
 import android.os.Build;
 import android.os.IBinder;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationServices;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import io.appium.settings.helpers.NotificationHelpers;
 import io.appium.settings.helpers.PlayServicesHelpers;
@@ -43,6 +51,14 @@ import io.appium.settings.location.FusedLocationProvider;
 import io.appium.settings.location.LocationFactory;
 import io.appium.settings.location.LocationManagerProvider;
 import io.appium.settings.location.MockLocationProvider;
+import io.appium.settings.location.MockLocationStats;
+import io.appium.settings.location.ProviderUpdater;
+import io.appium.settings.location.RouteFormat;
+import io.appium.settings.location.RoutePlayer;
+import io.appium.settings.location.RouteTiming;
+import io.appium.settings.location.Track;
+import io.appium.settings.location.TrackBuilder;
+import io.appium.settings.location.TrackLoader;
 
 public class LocationService extends Service {
     private static final String TAG = "MOCKED LOCATION SERVICE";
@@ -51,13 +67,37 @@ public class LocationService extends Service {
     private static final String LATITUDE_PARAMETER_KEY = "latitude";
     private static final String ALTITUDE_PARAMETER_KEY = "altitude";
     private static final String SPEED_PARAMETER_KEY = "speed";
+    private static final String ROUTE_PARAMETER_KEY = "route";
+    private static final String ROUTE_FILE_PARAMETER_KEY = "routeFile";
+    private static final String ROUTE_FORMAT_PARAMETER_KEY = "routeFormat";
+    private static final String ROUTE_TIMING_PARAMETER_KEY = "routeTiming";
+    private static final String PLAYBACK_PARAMETER_KEY = "playback";
+    private static final String POSITION_PARAMETER_KEY = "position";
+    private static final String LOOP_PARAMETER_KEY = "loop";
+    private static final String TIME_WARP_PARAMETER_KEY = "timeWarp";
+    private static final String UPDATE_INTERVAL_PARAMETER_KEY = "updateInterval";
 
     private static final long UPDATE_INTERVAL_MS = 2000L;
+    private static final long MIN_UPDATE_INTERVAL_MS = 10L;
 
-    private final List<MockLocationProvider> mockLocationProviders = new LinkedList<>();
+    private final List<MockLocationProvider> mockLocationProviders = new ArrayList<>();
+    // One per provider, so a slow provider does not delay the others
+    private ProviderUpdater[] providerUpdaters = new ProviderUpdater[0];
+    private FusedLocationProvider fusedLocationProvider = null;
     private final LocationFactory locationFactory = new LocationFactory();
-    private final Timer locationUpdatesTimer = new Timer();
-    private TimerTask locationUpdateTask;
+    private final ScheduledExecutorService locationUpdatesExecutor =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "MockLocationUpdates");
+                    // Keep the update rate steady while the device is busy
+                    thread.setPriority(Thread.MAX_PRIORITY);
+                    return thread;
+                }
+            });
+    private ScheduledFuture<?> locationUpdateFuture;
+    private long updateIntervalMs = UPDATE_INTERVAL_MS;
+    private TrackLoader trackLoader = null;
 
     @Override
     public IBinder onBind(Intent intent) {
@@ -69,6 +109,9 @@ public class LocationService extends Service {
         super.onCreate();
         initializeLocationProviders();
         enableLocationProviders();
+        for (ProviderUpdater providerUpdater : providerUpdaters) {
+            providerUpdater.start();
+        }
     }
 
     @Override
@@ -95,7 +138,12 @@ public class LocationService extends Service {
     @Override
     public void onDestroy() {
         Log.i(TAG, "Shutting down MockLocationService");
-        locationUpdatesTimer.cancel();
+        locationUpdatesExecutor.shutdownNow();
+        MockLocationStats.getInstance().stop();
+        cancelTrackLoading();
+        for (ProviderUpdater providerUpdater : providerUpdaters) {
+            providerUpdater.stop();
+        }
         disableLocationProviders();
         super.onDestroy();
     }
@@ -106,11 +154,223 @@ public class LocationService extends Service {
         }
         Log.i(TAG, "INTENT " + intent.getExtras());
 
-        // update the locationFactory also if the service is already running to mock.
-        updateMockLocationFactory(intent);
+        try {
+            // Invalid intents change neither the interval nor the location
+            long interval = intent.hasExtra(UPDATE_INTERVAL_PARAMETER_KEY)
+                    ? parseUpdateInterval(intent)
+                    : updateIntervalMs;
+            if (isPlaybackIntent(intent)) {
+                handlePlaybackIntent(intent);
+            } else if (hasCoordinates(intent) || !intent.hasExtra(UPDATE_INTERVAL_PARAMETER_KEY)) {
+                // update the locationFactory also if the service is already running to mock.
+                updateMockLocationFactory(intent);
+                cancelTrackLoading();
+            }
+            // Otherwise only the update interval changes and the current location or route is kept
+            updateIntervalMs = interval;
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, e.getMessage());
+            return;
+        }
         scheduleLocationUpdate();
     }
 
+    private static boolean hasCoordinates(Intent intent) {
+        return intent.hasExtra(LONGITUDE_PARAMETER_KEY) || intent.hasExtra(LATITUDE_PARAMETER_KEY);
+    }
+
+    private static long parseUpdateInterval(Intent intent) {
+        try {
+            long interval = Long.parseLong(intent.getStringExtra(UPDATE_INTERVAL_PARAMETER_KEY));
+            if (interval >= MIN_UPDATE_INTERVAL_MS) {
+                return interval;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException(String.format("updateInterval should be a valid number of " +
+                        "milliseconds not less than %s. '%s' is given instead", MIN_UPDATE_INTERVAL_MS,
+                intent.getStringExtra(UPDATE_INTERVAL_PARAMETER_KEY)));
+    }
+
+    private static boolean isPlaybackIntent(Intent intent) {
+        return hasRoute(intent) || intent.hasExtra(PLAYBACK_PARAMETER_KEY)
+                || intent.hasExtra(LOOP_PARAMETER_KEY) || intent.hasExtra(TIME_WARP_PARAMETER_KEY);
+    }
+
+    private static boolean hasRoute(Intent intent) {
+        return intent.hasExtra(ROUTE_PARAMETER_KEY) || intent.hasExtra(ROUTE_FILE_PARAMETER_KEY);
+    }
+
+    private static double parseDouble(Intent intent, String key) {
+        try {
+            return Double.parseDouble(intent.getStringExtra(key));
+        } catch (NullPointerException | NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("%s should be a valid number. '%s' is given instead",
+                    key, intent.getStringExtra(key)));
+        }
+    }
+
+    private static RouteTiming parseRouteTiming(Intent intent) {
+        if (!intent.hasExtra(ROUTE_TIMING_PARAMETER_KEY)) {
+            return RouteTiming.TIME;
+        }
+        RouteTiming timing = RouteTiming.fromName(intent.getStringExtra(ROUTE_TIMING_PARAMETER_KEY));
+        if (timing == null) {
+            throw new IllegalArgumentException(String.format("routeTiming should be one of %s or %s. " +
+                            "'%s' is given instead", RouteTiming.TIME.getName(), RouteTiming.SPEED.getName(),
+                    intent.getStringExtra(ROUTE_TIMING_PARAMETER_KEY)));
+        }
+        return timing;
+    }
+
+    private static double parseDefaultSpeed(Intent intent) {
+        return intent.hasExtra(SPEED_PARAMETER_KEY)
+                ? parseDouble(intent, SPEED_PARAMETER_KEY)
+                : Double.NaN;
+    }
+
+    /**
+     * Parses waypoints in format lat1,lon1[,alt1[,value1]];lat2,lon2[,alt2[,value2]];...
+     * where value is either the timestamp or the speed depending on the route timing.
+     */
+    private static Track parseRoute(Intent intent) {
+        TrackBuilder builder = new TrackBuilder(parseRouteTiming(intent), parseDefaultSpeed(intent));
+        for (String waypoint : intent.getStringExtra(ROUTE_PARAMETER_KEY).split(";")) {
+            if (!waypoint.trim().isEmpty()) {
+                builder.add(waypoint);
+            }
+        }
+        builder.complete();
+        return builder.getTrack();
+    }
+
+    /**
+     * Starts loading the route file. Text files are parsed in background, so the returned
+     * track might still be growing.
+     */
+    private Track loadRoute(Intent intent) {
+        File file = new File(intent.getStringExtra(ROUTE_FILE_PARAMETER_KEY));
+        RouteFormat format = intent.hasExtra(ROUTE_FORMAT_PARAMETER_KEY)
+                ? RouteFormat.fromName(intent.getStringExtra(ROUTE_FORMAT_PARAMETER_KEY))
+                : RouteFormat.fromFileName(file.getName());
+        if (format == null) {
+            throw new IllegalArgumentException(String.format("routeFormat should be one of %s, %s or %s. " +
+                            "'%s' is given instead", RouteFormat.BINARY.getName(), RouteFormat.CSV.getName(),
+                    RouteFormat.GPX.getName(), intent.getStringExtra(ROUTE_FORMAT_PARAMETER_KEY)));
+        }
+        TrackLoader loader = new TrackLoader(file, format, parseRouteTiming(intent), parseDefaultSpeed(intent));
+        Track track;
+        try {
+            track = loader.load();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(String.format("Cannot read the route file '%s': %s",
+                    file, e.getMessage()));
+        }
+        cancelTrackLoading();
+        trackLoader = loader;
+        return track;
+    }
+
+    private void cancelTrackLoading() {
+        if (trackLoader != null) {
+            trackLoader.cancel();
+            trackLoader = null;
+        }
+    }
+
+    /**
+     * @return the lower case playback command or null if it is not given
+     */
+    @Nullable
+    private static String parsePlaybackCommand(Intent intent) {
+        String command = intent.getStringExtra(PLAYBACK_PARAMETER_KEY);
+        if (command == null) {
+            return null;
+        }
+        String name = command.toLowerCase(Locale.ROOT);
+        switch (name) {
+            case "pause":
+            case "resume":
+            case "seek":
+            case "stop":
+                return name;
+            default:
+                throw new IllegalArgumentException(String.format("playback should be one of " +
+                        "pause, resume, seek or stop. '%s' is given instead", command));
+        }
+    }
+
+    /**
+     * Validates all the playback extras before the playback state is changed.
+     * The route file is opened last, since it starts loading the route in background.
+     */
+    private void handlePlaybackIntent(Intent intent) {
+        String command = parsePlaybackCommand(intent);
+        long position = "seek".equals(command) ? Math.round(parseDouble(intent, POSITION_PARAMETER_KEY)) : 0;
+        double timeWarp = 1;
+        if (intent.hasExtra(TIME_WARP_PARAMETER_KEY)) {
+            timeWarp = parseDouble(intent, TIME_WARP_PARAMETER_KEY);
+            RoutePlayer.validateTimeWarp(timeWarp);
+        }
+        RoutePlayer player;
+        if (hasRoute(intent)) {
+            Track track;
+            if (intent.hasExtra(ROUTE_PARAMETER_KEY)) {
+                track = parseRoute(intent);
+                cancelTrackLoading();
+            } else {
+                track = loadRoute(intent);
+            }
+            player = new RoutePlayer(track);
+            if (track.isComplete()) {
+                Log.i(TAG, String.format("Starting the playback of the route with %s waypoints lasting %sms",
+                        track.size(), track.getTime(track.size() - 1)));
+            } else {
+                Log.i(TAG, "Starting the playback of the route while it is being loaded");
+            }
+        } else {
+            player = locationFactory.getRoutePlayer();
+            if (player == null) {
+                throw new IllegalArgumentException(
+                        String.format("There is no route to control. Start it with '%s' first", ROUTE_PARAMETER_KEY));
+            }
+        }
+        if (intent.hasExtra(LOOP_PARAMETER_KEY)) {
+            player.setLooped(Boolean.parseBoolean(intent.getStringExtra(LOOP_PARAMETER_KEY)));
+        }
+        if (intent.hasExtra(TIME_WARP_PARAMETER_KEY)) {
+            player.setTimeWarp(timeWarp);
+        }
+        if (command != null) {
+            switch (command) {
+                case "pause":
+                    player.pause();
+                    break;
+                case "resume":
+                    player.resume();
+                    break;
+                case "seek":
+                    player.seek(position);
+                    break;
+                case "stop":
+                    // Keep mocking the current route position
+                    Location location = new Location(LocationManager.GPS_PROVIDER);
+                    if (player.fill(location)) {
+                        locationFactory.setLocation(location.getLatitude(), location.getLongitude(),
+                                location.getAltitude());
+                    } else {
+                        locationFactory.setRoute(null);
+                    }
+                    cancelTrackLoading();
+                    return;
+            }
+        }
+        if (hasRoute(intent)) {
+            locationFactory.setRoute(player);
+        }
+    }
+
     private void enableLocationProviders() {
         for (MockLocationProvider mockLocationProvider : mockLocationProviders) {
             try {
@@ -140,55 +400,69 @@ public class LocationService extends Service {
         mockLocationProviders.addAll(createMockProviders(locationManager));
         if (PlayServicesHelpers.isAvailable(this)) {
             Log.d(TAG, "Adding FusedLocationProvider");
-            mockLocationProviders.add(createFusedLocationProvider());
+            fusedLocationProvider = createFusedLocationProvider();
+            mockLocationProviders.add(fusedLocationProvider);
+        }
+        List<String> providerNames = new ArrayList<>();
+        for (MockLocationProvider mockLocationProvider : mockLocationProviders) {
+            providerNames.add(mockLocationProvider.getProviderName());
+        }
+        List<MockLocationStats.ProviderStats> providerStats =
+                MockLocationStats.getInstance().setProviders(providerNames);
+        providerUpdaters = new ProviderUpdater[mockLocationProviders.size()];
+        for (int i = 0; i < providerUpdaters.length; i++) {
+            providerUpdaters[i] = new ProviderUpdater(mockLocationProviders.get(i), locationFactory,
+                    providerStats.get(i));
         }
         Log.d(TAG, String.format("Created mock providers: %s", mockLocationProviders.toString()));
     }
 
+    private void updateMockLocations() {
+        // Runs on every tick, so it must not allocate
+        for (ProviderUpdater providerUpdater : providerUpdaters) {
+            providerUpdater.requestUpdate(Criteria.ACCURACY_FINE);
+        }
+    }
+
     private void scheduleLocationUpdate() {
-        Log.i(TAG, "Scheduling mock location updates");
+        Log.i(TAG, String.format("Scheduling mock location updates every %sms", updateIntervalMs));
 
         // If we run 'startservice' again we should schedule an update right away to avoid a delay
-        if (locationUpdateTask != null) {
-            locationUpdateTask.cancel();
+        if (locationUpdateFuture != null) {
+            locationUpdateFuture.cancel(false);
+        }
+
+        if (fusedLocationProvider != null) {
+            fusedLocationProvider.setUpdateInterval(updateIntervalMs);
         }
+        final MockLocationStats stats = MockLocationStats.getInstance();
+        stats.start(updateIntervalMs);
+        final long intervalNanos = TimeUnit.MILLISECONDS.toNanos(updateIntervalMs);
+        final long startNanos = System.nanoTime();
+        // Fixed-rate scheduling keeps updates aligned to the start time, so delays do not accumulate
+        locationUpdateFuture = locationUpdatesExecutor.scheduleAtFixedRate(new Runnable() {
+            private long updateIndex = 0;
 
-        locationUpdateTask = new TimerTask() {
             @Override
             public void run() {
-                for (MockLocationProvider mockLocationProvider : mockLocationProviders) {
-                    Location location = locationFactory.createLocation(mockLocationProvider.getProviderName(), Criteria.ACCURACY_FINE);
-                    Log.d(TAG, String.format("Setting location of '%s' to '%s'", mockLocationProvider.getProviderName(), location));
-                    try {
-                        mockLocationProvider.setLocation(location);
-                    } catch (Exception e) {
-                        Log.e(TAG, String.format("Could not set location for '%s'",
-                                mockLocationProvider.getProviderName()), e);
-                    }
+                long latenessNanos = System.nanoTime() - (startNanos + updateIndex * intervalNanos);
+                updateIndex++;
+                if (latenessNanos >= intervalNanos) {
+                    // The executor catches up with delayed updates in a burst,
+                    // but only the most recent one is worth sending
+                    stats.recordMissedDeadline();
+                    return;
                 }
+                stats.recordUpdate(latenessNanos);
+                updateMockLocations();
             }
-        };
-
-        locationUpdatesTimer.schedule(locationUpdateTask, 0, UPDATE_INTERVAL_MS);
+        }, 0, intervalNanos, TimeUnit.NANOSECONDS);
     }
 
     private void updateMockLocationFactory(Intent intent) {
-        double longitude;
-        try {
-            longitude = Double.valueOf(intent.getStringExtra("longitude"));
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException(
-                    String.format("longitude should be a valid number. '%s' is given instead",
-                            intent.getStringExtra(LONGITUDE_PARAMETER_KEY)));
-        }
-        double latitude;
-        try {
-            latitude = Double.valueOf(intent.getStringExtra("latitude"));
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException(
-                    String.format("latitude should be a valid number. '%s' is given instead",
-                            intent.getStringExtra(LATITUDE_PARAMETER_KEY)));
-        }
+        // Missing coordinates are reported the same way as invalid ones
+        double longitude = parseDouble(intent, LONGITUDE_PARAMETER_KEY);
+        double latitude = parseDouble(intent, LATITUDE_PARAMETER_KEY);
         double altitude = 0.0;
         try {
             if (intent.hasExtra(ALTITUDE_PARAMETER_KEY)) {
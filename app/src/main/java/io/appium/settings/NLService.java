@@ -22,27 +22,43 @@ import android.service.notification.NotificationListenerService;
 import android.service.notification.StatusBarNotification;
 import android.support.annotation.Nullable;
 import android.util.Log;
+import io.appium.settings.notifications.NotificationsJournal;
+import io.appium.settings.notifications.NotificationsStore;
 import io.appium.settings.notifications.StoredNotification;
 import io.appium.settings.notifications.StoredNotifications;
 
-import java.util.Arrays;
-import java.util.LinkedList;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
 
 public class NLService extends NotificationListenerService {
     private static final String TAG = NLService.class.getSimpleName();
-    private static final int MAX_BUFFER_SIZE = 100;
+    private static final String JOURNAL_FILE_NAME = "notifications.journal";
 
-    private final List<StoredNotification> notificationsBuffer = new LinkedList<>();
+    private final NotificationsStore notificationsBuffer = new NotificationsStore();
+    private NotificationsJournal notificationsJournal;
 
     @Override
     public void onCreate() {
         super.onCreate();
 
-        synchronized (notificationsBuffer) {
-            StoredNotifications.getInstance().bindNotificationsBuffer(notificationsBuffer);
-        }
+        StoredNotifications.getInstance().bindNotificationsBuffer(notificationsBuffer);
+        notificationsJournal = new NotificationsJournal(new File(getFilesDir(), JOURNAL_FILE_NAME),
+                notificationsBuffer);
+        notificationsJournal.start();
+    }
+
+    @Override
+    public void onDestroy() {
+        notificationsJournal.stop();
+
+        super.onDestroy();
     }
 
     @Nullable
@@ -53,10 +69,9 @@ public class NLService extends NotificationListenerService {
 
     @Override
     public void onListenerDisconnected() {
+        // The buffer is kept, so the history is not lost. Changes missed while
+        // the listener is disconnected are synchronized once it gets connected again.
         Log.i(TAG, "The notification listener has been disconnected");
-        synchronized (notificationsBuffer) {
-            notificationsBuffer.clear();
-        }
 
         super.onListenerDisconnected();
     }
@@ -66,67 +81,101 @@ public class NLService extends NotificationListenerService {
         super.onListenerConnected();
         Log.i(TAG, "The notification listener is connected");
 
-        synchronized (notificationsBuffer) {
-            StatusBarNotification[] activeNotifications = getActiveNotifications();
-            StatusBarNotification[] notificationsSlice = Arrays.copyOfRange(activeNotifications,
-                    0, Math.min(MAX_BUFFER_SIZE, activeNotifications.length));
-            notificationsBuffer.clear();
-            for (StatusBarNotification sbn : notificationsSlice) {
-                notificationsBuffer.add(new StoredNotification(sbn));
+        // Make sure the history has been restored from the journal before synchronizing it
+        notificationsJournal.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronizeActiveNotifications();
             }
-            Log.d(TAG, String.format("Successfully synchronized %s active notifications", notificationsBuffer.size()));
-        }
+        });
     }
 
-    @Override
-    public void onNotificationPosted(StatusBarNotification sbn) {
-        synchronized (notificationsBuffer) {
-            if (notificationsBuffer.size() >= MAX_BUFFER_SIZE) {
-                Log.d(TAG, String.format("The notifications buffer size has reached its maximum size of %s items. " +
-                        "Shrinking it in order to satisfy the constraints.", notificationsBuffer.size()));
-                StoredNotification itemToRemove = null;
-                ListIterator<StoredNotification> iter = notificationsBuffer.listIterator(notificationsBuffer.size());
-                while (iter.hasPrevious()) {
-                    StoredNotification currentItem = iter.previous();
-                    if (itemToRemove == null) {
-                        // Remove the last item in the list if nothing else matches
-                        itemToRemove = currentItem;
-                    }
-                    if (currentItem.isRemoved()) {
-                        itemToRemove = currentItem;
-                        // Quit the loop as soon as we found the oldest item marked as removed
-                        break;
-                    }
-                }
-                if (itemToRemove != null) {
-                    notificationsBuffer.remove(itemToRemove);
-                }
+    /**
+     * Stores active notifications, which are missing in the buffer or have been updated,
+     * and marks buffered notifications, which are not active anymore, as removed.
+     */
+    private void synchronizeActiveNotifications() {
+        StatusBarNotification[] activeNotifications;
+        try {
+            activeNotifications = getActiveNotifications();
+        } catch (Exception e) {
+            Log.e(TAG, "Cannot retrieve active notifications", e);
+            return;
+        }
+        if (activeNotifications == null) {
+            return;
+        }
+        Map<String, StoredNotification> storedItems = new HashMap<>();
+        for (StoredNotification item : notificationsBuffer.getSnapshot().toList()) {
+            storedItems.put(item.getKey(), item);
+        }
+        Set<String> activeKeys = new HashSet<>();
+        List<StoredNotification> postedItems = new ArrayList<>();
+        for (StatusBarNotification sbn : activeNotifications) {
+            String key = StoredNotification.getKey(sbn);
+            activeKeys.add(key);
+            StoredNotification storedItem = storedItems.get(key);
+            if (storedItem != null && !storedItem.isRemoved() && storedItem.getPostTime() == sbn.getPostTime()) {
+                continue;
             }
             try {
-                if (notificationsBuffer.isEmpty()) {
-                    notificationsBuffer.add(new StoredNotification((sbn)));
-                } else {
-                    notificationsBuffer.add(0, new StoredNotification(sbn));
-                }
-                Log.d(TAG, String.format("Successfully stored the newly arrived notification identified by %s",
-                        sbn.getId()));
+                postedItems.add(new StoredNotification(sbn));
             } catch (Exception e) {
-                Log.e(TAG, "Cannot store the newly arrived notification", e);
+                Log.e(TAG, "Cannot store the active notification", e);
             }
         }
+        Collections.sort(postedItems, new Comparator<StoredNotification>() {
+            @Override
+            public int compare(StoredNotification o1, StoredNotification o2) {
+                // The most recently posted item goes first
+                return o1.getPostTime() == o2.getPostTime() ? 0 : (o1.getPostTime() > o2.getPostTime() ? -1 : 1);
+            }
+        });
+        notificationsBuffer.addAll(postedItems);
+        for (StoredNotification item : postedItems) {
+            notificationsJournal.recordPosted(item);
+        }
+        int removedCount = 0;
+        for (StoredNotification item : storedItems.values()) {
+            if (item.isRemoved() || activeKeys.contains(item.getKey())) {
+                continue;
+            }
+            StoredNotification removedItem = notificationsBuffer.markRemoved(item.getKey());
+            if (removedItem != null) {
+                notificationsJournal.recordRemoved(removedItem);
+                removedCount++;
+            }
+        }
+        Log.d(TAG, String.format("Successfully synchronized %s active notifications. " +
+                        "Stored %s new or updated item(s) and marked %s item(s) as removed",
+                activeNotifications.length, postedItems.size(), removedCount));
     }
 
     @Override
-    public void onNotificationRemoved(StatusBarNotification sbn) {
-        synchronized (notificationsBuffer) {
-            for (StoredNotification storedNotification : notificationsBuffer) {
-                if (storedNotification.getNotification().getId() == sbn.getId()) {
-                    storedNotification.setRemoved(true);
-                    Log.d(TAG, String.format("Successfully marked the removed notification identified by %s",
-                            sbn.getId()));
-                    break;
-                }
+    public void onNotificationPosted(StatusBarNotification sbn) {
+        try {
+            StoredNotification item = new StoredNotification(sbn);
+            int evictedCount = notificationsBuffer.add(item);
+            if (evictedCount > 0) {
+                Log.d(TAG, String.format("The notifications buffer has reached its limits. " +
+                        "Evicted %s item(s) in order to satisfy the constraints.", evictedCount));
             }
+            Log.d(TAG, String.format("Successfully stored the newly arrived notification identified by %s",
+                    sbn.getId()));
+            notificationsJournal.recordPosted(item);
+            StoredNotifications.getInstance().notifyStored(item);
+        } catch (Exception e) {
+            Log.e(TAG, "Cannot store the newly arrived notification", e);
+        }
+    }
+
+    @Override
+    public void onNotificationRemoved(StatusBarNotification sbn) {
+        StoredNotification item = notificationsBuffer.markRemoved(StoredNotification.getKey(sbn));
+        if (item != null) {
+            notificationsJournal.recordRemoved(item);
+            Log.d(TAG, String.format("Successfully marked the removed notification identified by %s",
+                    sbn.getId()));
         }
     }
 }
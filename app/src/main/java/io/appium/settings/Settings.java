@@ -34,8 +34,12 @@ import io.appium.settings.receivers.DataConnectionSettingReceiver;
 import io.appium.settings.receivers.HasAction;
 import io.appium.settings.receivers.LocaleSettingReceiver;
 import io.appium.settings.receivers.LocationInfoReceiver;
+import io.appium.settings.receivers.MockLocationStatsReceiver;
+import io.appium.settings.receivers.NotificationsBufferReceiver;
 import io.appium.settings.receivers.NotificationsReceiver;
+import io.appium.settings.receivers.NotificationsWaitReceiver;
 import io.appium.settings.receivers.SmsReader;
+import io.appium.settings.receivers.SmsWaitReceiver;
 import io.appium.settings.receivers.UnpairBluetoothDevicesReceiver;
 import io.appium.settings.receivers.WiFiConnectionSettingReceiver;
 
@@ -60,7 +64,11 @@ public class Settings extends Activity {
         receiverClasses.add(BluetoothConnectionSettingReceiver.class);
         receiverClasses.add(UnpairBluetoothDevicesReceiver.class);
         receiverClasses.add(NotificationsReceiver.class);
+        receiverClasses.add(NotificationsWaitReceiver.class);
+        receiverClasses.add(NotificationsBufferReceiver.class);
         receiverClasses.add(SmsReader.class);
+        receiverClasses.add(SmsWaitReceiver.class);
+        receiverClasses.add(MockLocationStatsReceiver.class);
         registerSettingsReceivers(receiverClasses);
 
         // https://developer.android.com/about/versions/oreo/background-location-limits
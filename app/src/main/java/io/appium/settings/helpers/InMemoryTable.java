@@ -0,0 +1,138 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.helpers;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * Applies content provider query arguments to in-memory rows.
+ * Rows are put to a temporary in-memory SQLite table, so selections and sort orders
+ * have exactly the same syntax and semantics as in system content providers.
+ */
+public class InMemoryTable {
+    private static final String TABLE_NAME = "rows";
+
+    private InMemoryTable() {
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    private static void bind(SQLiteStatement statement, int index, @Nullable Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof Double || value instanceof Float) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            statement.bindLong(index, (Boolean) value ? 1 : 0);
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+
+    /**
+     * Selection arguments are always bound as strings, so columns must have a numeric affinity
+     * in order to compare their values with arguments numerically, like system providers do.
+     */
+    private static String getColumnType(List<Object[]> rows, int column) {
+        for (Object[] row : rows) {
+            Object value = row[column];
+            if (value == null) {
+                continue;
+            }
+            if (value instanceof Double || value instanceof Float) {
+                return "REAL";
+            }
+            if (value instanceof Number || value instanceof Boolean) {
+                return "INTEGER";
+            }
+            return "TEXT";
+        }
+        return "TEXT";
+    }
+
+    private static void insert(SQLiteDatabase db, String[] columns, List<Object[]> rows) {
+        StringBuilder definition = new StringBuilder();
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                definition.append(',');
+                placeholders.append(',');
+            }
+            definition.append(quote(columns[i])).append(' ').append(getColumnType(rows, i));
+            placeholders.append('?');
+        }
+        db.execSQL(String.format("CREATE TABLE %s (%s)", TABLE_NAME, definition));
+        SQLiteStatement statement = db.compileStatement(
+                String.format("INSERT INTO %s VALUES (%s)", TABLE_NAME, placeholders));
+        db.beginTransaction();
+        try {
+            for (Object[] row : rows) {
+                for (int i = 0; i < columns.length; i++) {
+                    bind(statement, i + 1, row[i]);
+                }
+                statement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+    }
+
+    /**
+     * @param columns the names of the table columns in the order of row values
+     * @param rows the table content. Each row contains values of all the table columns.
+     * @param projection the columns to return or null to return all of them
+     * @param selection the filter to apply to rows or null to return all of them
+     * @param selectionArgs the values of ? placeholders in the selection
+     * @param sortOrder the order of rows to return, which might be followed by LIMIT,
+     *                  or null to keep them as is
+     * @return the cursor over the selected rows. The table is dropped once the cursor is closed.
+     * @throws android.database.sqlite.SQLiteException if the query arguments are not valid
+     */
+    public static Cursor query(String[] columns, List<Object[]> rows, @Nullable String[] projection,
+                               @Nullable String selection, @Nullable String[] selectionArgs,
+                               @Nullable String sortOrder) {
+        final SQLiteDatabase db = SQLiteDatabase.create(null);
+        Cursor cursor = null;
+        try {
+            insert(db, columns, rows);
+            cursor = db.query(TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder);
+        } finally {
+            if (cursor == null) {
+                db.close();
+            }
+        }
+        return new CursorWrapper(cursor) {
+            @Override
+            public void close() {
+                super.close();
+                db.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,319 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.helpers;
+
+import android.support.annotation.Nullable;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writes JSON directly into a single buffer, so responses do not need to be assembled
+ * from intermediate object trees. Unlike {@link android.util.JsonWriter} it also accepts
+ * already serialized values. Strings are escaped the same way org.json does it, so
+ * the output does not change for clients.
+ * If the writer is created for a sink then the buffer is drained to it
+ * after every written value once the buffer is full enough, so
+ * the memory usage does not depend on the size of the result.
+ * The writer does not validate the document structure.
+ */
+public class JsonResponseWriter {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int DRAIN_THRESHOLD = 8192;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final StringBuilder buffer;
+    @Nullable
+    private final Writer sink;
+    // Fixed size, so draining a large raw value does not grow it
+    private char[] drainChunk = null;
+    private IOException sinkError = null;
+    // Whether the container at the corresponding nesting level already has elements
+    private boolean[] hasElements = new boolean[8];
+    private int depth = 0;
+    private boolean isAfterName = false;
+
+    public JsonResponseWriter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the expected length of the resulting JSON
+     */
+    public JsonResponseWriter(int capacity) {
+        buffer = new StringBuilder(Math.max(16, capacity));
+        sink = null;
+    }
+
+    /**
+     * @param sink the writer to drain the written JSON to. Call {@link #flush()} once the
+     *             document is complete.
+     */
+    public JsonResponseWriter(Writer sink) {
+        buffer = new StringBuilder(DRAIN_THRESHOLD * 2);
+        this.sink = sink;
+    }
+
+    private void drain() {
+        if (sinkError == null) {
+            if (drainChunk == null) {
+                drainChunk = new char[DRAIN_THRESHOLD];
+            }
+            try {
+                for (int start = 0, length = buffer.length(); start < length; start += drainChunk.length) {
+                    int end = Math.min(length, start + drainChunk.length);
+                    buffer.getChars(start, end, drainChunk, 0);
+                    //noinspection ConstantConditions
+                    sink.write(drainChunk, 0, end - start);
+                }
+            } catch (IOException e) {
+                // The error is reported by flush(), so writing methods do not need to declare it
+                sinkError = e;
+            }
+        }
+        buffer.setLength(0);
+    }
+
+    private JsonResponseWriter afterValue() {
+        if (sink != null && buffer.length() >= DRAIN_THRESHOLD) {
+            drain();
+        }
+        return this;
+    }
+
+    /**
+     * Drains the remaining buffer content to the sink and flushes it.
+     *
+     * @throws IOException if the sink has failed to accept the written JSON
+     * @throws IllegalStateException if the writer has been created without a sink
+     */
+    public void flush() throws IOException {
+        if (sink == null) {
+            throw new IllegalStateException("The writer has no sink to flush to");
+        }
+        drain();
+        if (sinkError == null) {
+            try {
+                sink.flush();
+            } catch (IOException e) {
+                sinkError = e;
+            }
+        }
+        if (sinkError != null) {
+            throw sinkError;
+        }
+    }
+
+    /**
+     * @return true if the sink has failed to accept the written JSON, e.g. because the reader has gone
+     */
+    public boolean checkError() {
+        return sinkError != null;
+    }
+
+    private void beforeValue() {
+        if (isAfterName) {
+            isAfterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (hasElements[depth - 1]) {
+                buffer.append(',');
+            }
+            hasElements[depth - 1] = true;
+        }
+    }
+
+    private JsonResponseWriter open(char bracket) {
+        beforeValue();
+        if (depth == hasElements.length) {
+            hasElements = Arrays.copyOf(hasElements, depth * 2);
+        }
+        hasElements[depth++] = false;
+        buffer.append(bracket);
+        return this;
+    }
+
+    private JsonResponseWriter close(char bracket) {
+        depth--;
+        buffer.append(bracket);
+        return afterValue();
+    }
+
+    public JsonResponseWriter beginObject() {
+        return open('{');
+    }
+
+    public JsonResponseWriter endObject() {
+        return close('}');
+    }
+
+    public JsonResponseWriter beginArray() {
+        return open('[');
+    }
+
+    public JsonResponseWriter endArray() {
+        return close(']');
+    }
+
+    public JsonResponseWriter name(String name) {
+        beforeValue();
+        appendQuoted(name);
+        buffer.append(':');
+        isAfterName = true;
+        return this;
+    }
+
+    public JsonResponseWriter nullValue() {
+        beforeValue();
+        buffer.append("null");
+        return afterValue();
+    }
+
+    public JsonResponseWriter value(@Nullable String value) {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        appendQuoted(value);
+        return afterValue();
+    }
+
+    public JsonResponseWriter value(boolean value) {
+        beforeValue();
+        buffer.append(value);
+        return afterValue();
+    }
+
+    public JsonResponseWriter value(long value) {
+        beforeValue();
+        buffer.append(value);
+        return afterValue();
+    }
+
+    /**
+     * Writes the number as a JSON string without converting it to a String first.
+     */
+    public JsonResponseWriter quotedValue(long value) {
+        beforeValue();
+        buffer.append('"').append(value).append('"');
+        return afterValue();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value is not a finite number
+     */
+    public JsonResponseWriter value(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException(String.format("%s is not a valid JSON number", value));
+        }
+        beforeValue();
+        if (value == (long) value) {
+            buffer.append((long) value);
+        } else {
+            buffer.append(value);
+        }
+        return afterValue();
+    }
+
+    /**
+     * Writes the value of any type supported by org.json.
+     *
+     * @param value a string, number, boolean, null or {@link JSONObject#NULL}
+     */
+    public JsonResponseWriter value(@Nullable Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            return nullValue();
+        }
+        if (value instanceof String) {
+            return value((String) value);
+        }
+        if (value instanceof Boolean) {
+            return value(((Boolean) value).booleanValue());
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return value(((Number) value).doubleValue());
+        }
+        if (value instanceof Number) {
+            return value(((Number) value).longValue());
+        }
+        return value(value.toString());
+    }
+
+    /**
+     * @param json the already serialized JSON value, which is written as is
+     */
+    public JsonResponseWriter rawValue(String json) {
+        beforeValue();
+        buffer.append(json);
+        return afterValue();
+    }
+
+    private void appendQuoted(String value) {
+        buffer.append('"');
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    buffer.append('\\').append(c);
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                case '\b':
+                    buffer.append("\\b");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                case '\f':
+                    buffer.append("\\f");
+                    break;
+                default:
+                    if (c <= 0x1F) {
+                        buffer.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+                    } else {
+                        buffer.append(c);
+                    }
+                    break;
+            }
+        }
+        buffer.append('"');
+    }
+
+    /**
+     * @return the count of buffered characters, which have not been drained to the sink yet
+     */
+    public int length() {
+        return buffer.length();
+    }
+
+    /**
+     * @return the buffered JSON, which has not been drained to the sink yet
+     */
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+}
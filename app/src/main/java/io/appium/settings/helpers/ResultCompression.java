@@ -0,0 +1,118 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.helpers;
+
+import android.content.BroadcastReceiver;
+import android.content.Intent;
+import android.os.Bundle;
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Handles the optional compression of broadcast results requested with the `compress` extra.
+ * Compressed results are gzipped and base64-encoded. Result extras then contain the `encoding`
+ * of the data and the byte sizes of the raw and of the compressed data.
+ */
+public class ResultCompression {
+    private static final String TAG = ResultCompression.class.getSimpleName();
+    private static final String COMPRESS_SETTING_NAME = "compress";
+    private static final String GZIP_ENCODING = "gzip";
+    private static final String ENCODING_EXTRA = "encoding";
+    private static final String RAW_SIZE_EXTRA = "rawSize";
+    private static final String COMPRESSED_SIZE_EXTRA = "compressedSize";
+
+    /**
+     * @param intent the broadcast request
+     * @return true if the request asks for a compressed result
+     * @throws IllegalArgumentException if the requested compression is not supported
+     */
+    public static boolean isRequested(Intent intent) {
+        String value = intent.getStringExtra(COMPRESS_SETTING_NAME);
+        if (value == null || value.isEmpty()) {
+            return false;
+        }
+        if (!GZIP_ENCODING.equalsIgnoreCase(value)) {
+            throw new IllegalArgumentException(String.format(
+                    "'%s' compression is not supported. Only '%s' is supported", value, GZIP_ENCODING));
+        }
+        return true;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        // Gzip output of repetitive JSON is usually several times smaller than the input
+        ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(32, data.length / 4));
+        GZIPOutputStream gzipStream = new GZIPOutputStream(output);
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            gzipStream.write(data);
+        } finally {
+            gzipStream.close();
+        }
+        return output.toByteArray();
+    }
+
+    private static void setCompressedResult(BroadcastReceiver receiver, int resultCode, byte[] data)
+            throws IOException {
+        byte[] compressed = gzip(data);
+        Bundle extras = new Bundle();
+        extras.putString(ENCODING_EXTRA, GZIP_ENCODING);
+        extras.putInt(RAW_SIZE_EXTRA, data.length);
+        extras.putInt(COMPRESSED_SIZE_EXTRA, compressed.length);
+        Log.d(TAG, String.format("Compressed the result from %s to %s bytes", data.length, compressed.length));
+        receiver.setResult(resultCode, Base64.encodeToString(compressed, Base64.NO_WRAP), extras);
+    }
+
+    /**
+     * Sets the compressed broadcast result. The data is set base64-encoded without
+     * result extras if the compression fails.
+     *
+     * @param receiver the receiver to set the result for
+     * @param resultCode the result code to set
+     * @param data the raw result data
+     */
+    public static void setResult(BroadcastReceiver receiver, int resultCode, byte[] data) {
+        try {
+            setCompressedResult(receiver, resultCode, data);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot compress the result", e);
+            receiver.setResult(resultCode, Base64.encodeToString(data, Base64.NO_WRAP), null);
+        }
+    }
+
+    /**
+     * Sets the compressed broadcast result. The data is set as is without
+     * result extras if the compression fails.
+     *
+     * @param receiver the receiver to set the result for
+     * @param resultCode the result code to set
+     * @param data the raw result data, which is encoded to UTF-8 before the compression
+     */
+    public static void setResult(BroadcastReceiver receiver, int resultCode, String data) {
+        try {
+            // StandardCharsets requires API 19, while API 18 is still supported
+            //noinspection CharsetObjectCanBeUsed
+            setCompressedResult(receiver, resultCode, data.getBytes("UTF-8"));
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot compress the result", e);
+            receiver.setResult(resultCode, data, null);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.helpers;
+
+import android.content.BroadcastReceiver;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.annotation.Nullable;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Builds version tags of broadcast results, so clients could skip repeated reads of unchanged data
+ * by passing the tag of the previous result in the `ifNoneMatch` extra.
+ * A tag is composed of the data source version and of the hash of the request extras,
+ * so results of different requests never share the same tag.
+ */
+public class ResultTag {
+    private static final String IF_NONE_MATCH_SETTING_NAME = "ifNoneMatch";
+    private static final String ETAG_SETTING_NAME = "etag";
+    private static final String TAG_EXTRA = "etag";
+    /**
+     * The result code of broadcasts, whose data has not changed since the tag passed in the request
+     */
+    public static final int NOT_MODIFIED = 304;
+    // In-memory sources start over after the process restart
+    private static final String PROCESS_ID = Long.toString(System.currentTimeMillis(), 36);
+
+    /**
+     * @param sourceVersion the value, which changes whenever the data source content changes
+     * @param request the broadcast request
+     * @return the tag of the result of the given request
+     */
+    public static String build(String sourceVersion, Intent request) {
+        int requestHash = 0;
+        Bundle extras = request.getExtras();
+        if (extras != null) {
+            Set<String> names = new TreeSet<>(extras.keySet());
+            names.remove(IF_NONE_MATCH_SETTING_NAME);
+            names.remove(ETAG_SETTING_NAME);
+            for (String name : names) {
+                requestHash = 31 * requestHash + (name + "=" + extras.get(name)).hashCode();
+            }
+        }
+        return String.format("%s-%s-%s", PROCESS_ID, sourceVersion, Integer.toHexString(requestHash));
+    }
+
+    /**
+     * Tells whether the client is interested in the tag. Receivers, whose data source version
+     * is expensive to compute, should only build tags for such requests.
+     *
+     * @param request the broadcast request
+     * @return true if the request contains the `ifNoneMatch` extra or the `etag` extra set to true
+     */
+    public static boolean isRequested(Intent request) {
+        return request.hasExtra(IF_NONE_MATCH_SETTING_NAME)
+                || Boolean.parseBoolean(request.getStringExtra(ETAG_SETTING_NAME));
+    }
+
+    /**
+     * @param request the broadcast request
+     * @param tag the tag of the current result or null if it is unknown
+     * @return true if the request contains the same tag
+     */
+    public static boolean matches(Intent request, @Nullable String tag) {
+        return tag != null && tag.equals(request.getStringExtra(IF_NONE_MATCH_SETTING_NAME));
+    }
+
+    /**
+     * Sets the empty result with {@link #NOT_MODIFIED} code.
+     *
+     * @param receiver the receiver to set the result for
+     * @param tag the tag of the current result
+     */
+    public static void setNotModified(BroadcastReceiver receiver, String tag) {
+        Bundle extras = new Bundle();
+        extras.putString(TAG_EXTRA, tag);
+        receiver.setResult(NOT_MODIFIED, "", extras);
+    }
+
+    /**
+     * Adds the tag to the result extras. Must be called after the result data is set.
+     *
+     * @param receiver the receiver to set the tag for
+     * @param tag the tag of the current result or null if it is unknown
+     */
+    public static void attach(BroadcastReceiver receiver, @Nullable String tag) {
+        if (tag != null) {
+            receiver.getResultExtras(true).putString(TAG_EXTRA, tag);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.location;
+
+import java.util.Arrays;
+
+/**
+ * Track keeping its waypoints in primitive arrays, which grow as waypoints are added.
+ * Waypoints could be added by one thread while another one reads them.
+ */
+public class ArrayTrack implements Track {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private double[] latitudes = new double[INITIAL_CAPACITY];
+    private double[] longitudes = new double[INITIAL_CAPACITY];
+    private double[] altitudes = new double[INITIAL_CAPACITY];
+    private long[] times = new long[INITIAL_CAPACITY];
+    private volatile int size = 0;
+    private volatile boolean isComplete = false;
+
+    /**
+     * @param latitude the waypoint latitude in degrees
+     * @param longitude the waypoint longitude in degrees
+     * @param altitude the waypoint altitude in meters
+     * @param time the waypoint time in milliseconds since the first waypoint
+     * @throws IllegalArgumentException if the waypoint is not valid or it is earlier than the previous one
+     */
+    public synchronized void add(double latitude, double longitude, double altitude, long time) {
+        if (isComplete) {
+            throw new IllegalStateException("The track is already complete");
+        }
+        GeoMath.validateCoordinates(latitude, longitude);
+        if (size > 0 && time < times[size - 1]) {
+            throw new IllegalArgumentException(String.format(
+                    "Waypoint times must not decrease. %s is given after %s", time, times[size - 1]));
+        }
+        if (size == latitudes.length) {
+            int capacity = latitudes.length * 2;
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            altitudes = Arrays.copyOf(altitudes, capacity);
+            times = Arrays.copyOf(times, capacity);
+        }
+        latitudes[size] = latitude;
+        longitudes[size] = longitude;
+        altitudes[size] = altitude;
+        times[size] = time;
+        size++;
+    }
+
+    /**
+     * Marks the track as complete, so it could be looped.
+     */
+    public void complete() {
+        isComplete = true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isComplete() {
+        return isComplete;
+    }
+
+    @Override
+    public synchronized double getLatitude(int index) {
+        return latitudes[index];
+    }
+
+    @Override
+    public synchronized double getLongitude(int index) {
+        return longitudes[index];
+    }
+
+    @Override
+    public synchronized double getAltitude(int index) {
+        return altitudes[index];
+    }
+
+    @Override
+    public synchronized long getTime(int index) {
+        return times[index];
+    }
+}
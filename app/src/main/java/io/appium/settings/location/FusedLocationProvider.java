@@ -24,6 +24,12 @@ import android.util.Log;
 
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static android.content.pm.PackageManager.PERMISSION_GRANTED;
 import static android.support.v4.content.ContextCompat.checkSelfPermission;
@@ -33,10 +39,15 @@ public class FusedLocationProvider implements MockLocationProvider {
     private final static String TAG = FusedLocationProvider.class.getSimpleName();
 
     private final static String PROVIDER_NAME = "fused";
+    // Play Services might take a while to accept a location even at high update rates
+    private final static long MIN_TIMEOUT_MS = 1000L;
 
     private final GoogleApiClient googleApiClient;
     private final FusedLocationProviderClient fusedLocationProviderClient;
     private final Context context;
+    private volatile long timeoutMs = MIN_TIMEOUT_MS;
+    // Only accessed on the thread sending updates
+    private Task<Void> pendingTask = null;
 
     public FusedLocationProvider(GoogleApiClient googleApiClient, FusedLocationProviderClient fusedLocationProviderClient, Context context) {
         this.googleApiClient = googleApiClient;
@@ -49,17 +60,52 @@ public class FusedLocationProvider implements MockLocationProvider {
         return PROVIDER_NAME;
     }
 
+    /**
+     * Limits how long each update waits for Play Services. Waiting longer than the update interval
+     * would only make the following updates skipped.
+     *
+     * @param intervalMs the interval between mock location updates in milliseconds
+     */
+    public void setUpdateInterval(long intervalMs) {
+        timeoutMs = Math.max(intervalMs, MIN_TIMEOUT_MS);
+    }
+
+    /**
+     * Waits until Google Play Services have accepted the location, since the call is asynchronous
+     * and the location instance is reused by the caller. Must not be called on the main thread.
+     * The wait is limited by the update interval, so a task, which never completes, does not block
+     * the following updates. No new location is sent until such a task completes.
+     *
+     * Failures, including timeouts, are thrown, so the caller records them in the provider statistics.
+     *
+     * @throws IllegalStateException if the location has not been set or the wait has timed out
+     */
     @SuppressLint("MissingPermission")
     @Override
     public void setLocation(Location location) {
-        if (!hasPermissions()) {
-            return;
+        // Not logged here, since the call is repeated on every update
+        if (checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) != PERMISSION_GRANTED) {
+            throw new IllegalStateException(
+                    String.format("Missing permission: '%s'", Manifest.permission.ACCESS_FINE_LOCATION));
         }
         if (!googleApiClient.isConnected()) {
-            Log.d(TAG, "GoogleApiClient is not connected");
-            return;
+            throw new IllegalStateException("GoogleApiClient is not connected");
+        }
+        if (pendingTask != null && !pendingTask.isComplete()) {
+            throw new IllegalStateException("The previous mock location has not been accepted yet");
+        }
+        pendingTask = fusedLocationProviderClient.setMockLocation(location);
+        try {
+            Tasks.await(pendingTask, timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Cannot set the mock location", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(
+                    String.format("The mock location has not been accepted within %sms", timeoutMs), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while setting the mock location", e);
         }
-        fusedLocationProviderClient.setMockLocation(location);
     }
 
     @SuppressLint("MissingPermission")
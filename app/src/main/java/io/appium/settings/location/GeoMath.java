@@ -0,0 +1,99 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.location;
+
+/**
+ * Great-circle calculations on a spherical Earth model.
+ */
+public class GeoMath {
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+    // Below this angular distance points are interpolated linearly to avoid the division by zero
+    private static final double MIN_SLERP_DISTANCE = 1e-12;
+
+    private GeoMath() {}
+
+    /**
+     * @throws IllegalArgumentException if the given coordinates are out of range
+     */
+    public static void validateCoordinates(double latitude, double longitude) {
+        if (!(latitude >= -90 && latitude <= 90)) {
+            throw new IllegalArgumentException(String.format(
+                    "latitude must be in range -90..90. %s is given instead", latitude));
+        }
+        if (!(longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException(String.format(
+                    "longitude must be in range -180..180. %s is given instead", longitude));
+        }
+    }
+
+    private static double getAngularDistance(double lat1, double lon1, double lat2, double lon2) {
+        double sinHalfLat = Math.sin((lat2 - lat1) / 2);
+        double sinHalfLon = Math.sin((lon2 - lon1) / 2);
+        double a = sinHalfLat * sinHalfLat + Math.cos(lat1) * Math.cos(lat2) * sinHalfLon * sinHalfLon;
+        return 2 * Math.atan2(Math.sqrt(a), Math.sqrt(Math.max(0, 1 - a)));
+    }
+
+    /**
+     * @return the great-circle distance between the given points in meters
+     */
+    public static double getDistance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        return EARTH_RADIUS_METERS * getAngularDistance(Math.toRadians(latitude1), Math.toRadians(longitude1),
+                Math.toRadians(latitude2), Math.toRadians(longitude2));
+    }
+
+    /**
+     * @return the initial bearing of the great-circle path from the first point to the second one
+     * in degrees clockwise from the north in range [0, 360)
+     */
+    public static double getBearing(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double lat1 = Math.toRadians(latitude1);
+        double lat2 = Math.toRadians(latitude2);
+        double deltaLon = Math.toRadians(longitude2 - longitude1);
+        double y = Math.sin(deltaLon) * Math.cos(lat2);
+        double x = Math.cos(lat1) * Math.sin(lat2) - Math.sin(lat1) * Math.cos(lat2) * Math.cos(deltaLon);
+        double bearing = Math.toDegrees(Math.atan2(y, x));
+        return bearing < 0 ? bearing + 360 : bearing;
+    }
+
+    /**
+     * Finds the point on the great-circle segment between the given points.
+     *
+     * @param fraction the fraction of the segment length from the first point in range [0, 1]
+     * @param result the array to put the latitude and the longitude of the found point in degrees to
+     */
+    public static void interpolate(double latitude1, double longitude1, double latitude2, double longitude2,
+                                   double fraction, double[] result) {
+        double lat1 = Math.toRadians(latitude1);
+        double lon1 = Math.toRadians(longitude1);
+        double lat2 = Math.toRadians(latitude2);
+        double lon2 = Math.toRadians(longitude2);
+        double distance = getAngularDistance(lat1, lon1, lat2, lon2);
+        if (distance < MIN_SLERP_DISTANCE) {
+            result[0] = latitude1 + (latitude2 - latitude1) * fraction;
+            result[1] = longitude1 + (longitude2 - longitude1) * fraction;
+            return;
+        }
+        double sinDistance = Math.sin(distance);
+        double a = Math.sin((1 - fraction) * distance) / sinDistance;
+        double b = Math.sin(fraction * distance) / sinDistance;
+        double x = a * Math.cos(lat1) * Math.cos(lon1) + b * Math.cos(lat2) * Math.cos(lon2);
+        double y = a * Math.cos(lat1) * Math.sin(lon1) + b * Math.cos(lat2) * Math.sin(lon2);
+        double z = a * Math.sin(lat1) + b * Math.sin(lat2);
+        result[0] = Math.toDegrees(Math.atan2(z, Math.sqrt(x * x + y * y)));
+        result[1] = Math.toDegrees(Math.atan2(y, x));
+    }
+}
@@ -19,6 +19,7 @@ package io.appium.settings.location;
 import android.location.Location;
 import android.os.Build;
 import android.os.SystemClock;
+import android.support.annotation.Nullable;
 
 public class LocationFactory {
 
@@ -27,25 +28,38 @@ public class LocationFactory {
     private double altitude;
     private float speed;
     private boolean hasSpeed = false;
+    @Nullable
+    private RoutePlayer routePlayer = null;
 
 
-    public synchronized Location createLocation(String providerName, float accuracy) {
-        Location l = new Location(providerName);
+    /**
+     * Sets the given location to the current mocked values. The call does not allocate,
+     * so the same location instance could be updated on every tick.
+     *
+     * @param l the location to update
+     * @param accuracy the accuracy to set
+     */
+    @SuppressWarnings("deprecation")
+    public synchronized void updateLocation(Location l, float accuracy) {
         l.setAccuracy(accuracy);
 
-        l.setLatitude(latitude);
-        l.setLongitude(longitude);
-        l.setAltitude(altitude);
-        if (hasSpeed) {
-            l.setSpeed(speed);
+        if (routePlayer == null || !routePlayer.fill(l)) {
+            l.setLatitude(latitude);
+            l.setLongitude(longitude);
+            l.setAltitude(altitude);
+            if (hasSpeed) {
+                l.setSpeed(speed);
+            } else {
+                // The speed might be left from the previous update
+                l.removeSpeed();
+            }
+            l.setBearing(0);
         }
-        l.setBearing(0);
 
         l.setTime(System.currentTimeMillis());
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
             l.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos());
         }
-        return l;
     }
 
     public synchronized void setLocation(double latitude, double longitude, double altitude, float speed) {
@@ -59,5 +73,23 @@ public class LocationFactory {
         this.longitude = longitude;
         this.altitude = altitude;
         this.hasSpeed = false;
+        this.routePlayer = null;
+    }
+
+    /**
+     * Makes created locations follow the given route instead of the static location.
+     *
+     * @param routePlayer the player of the route to follow or null to return to the static location
+     */
+    public synchronized void setRoute(@Nullable RoutePlayer routePlayer) {
+        this.routePlayer = routePlayer;
+    }
+
+    /**
+     * @return the player of the currently followed route or null if the location is static
+     */
+    @Nullable
+    public synchronized RoutePlayer getRoutePlayer() {
+        return routePlayer;
     }
 }
@@ -0,0 +1,154 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.location;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Track reading its waypoints directly from a memory-mapped binary file, so even long tracks
+ * do not occupy the heap. The file starts with the 8-byte header consisting of
+ * the `ATRK` magic and the format version, followed by 20-byte waypoint records.
+ * Each record contains the latitude and the longitude in degrees multiplied by 10^7 (int32),
+ * the altitude in centimeters (int32) and the timestamp in milliseconds (int64).
+ * All numbers are little-endian. Timestamps must not decrease.
+ * Records are validated one by one with {@link #validateNext()}, so long files could be validated
+ * in background. Only validated records are visible to readers, like in a growing track.
+ */
+public class MappedTrack implements Track {
+    private static final int MAGIC = 0x4B525441; // "ATRK" read as little-endian int32
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 20;
+    private static final int LONGITUDE_OFFSET = 4;
+    private static final int ALTITUDE_OFFSET = 8;
+    private static final int TIME_OFFSET = 12;
+    private static final double COORDINATE_SCALE = 1e7;
+    private static final double ALTITUDE_SCALE = 100;
+
+    private final ByteBuffer buffer;
+    private final int recordsCount;
+    private final long firstTimestamp;
+    // Only modified by the validating thread
+    private volatile int size = 0;
+    private volatile boolean isComplete = false;
+
+    /**
+     * Maps the file and validates its header.
+     *
+     * @param file the file to map
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file content is not valid
+     */
+    public MappedTrack(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            FileChannel channel = input.getChannel();
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE
+                    || (length - HEADER_SIZE) % RECORD_SIZE != 0) {
+                throw new IllegalArgumentException(String.format(
+                        "The size of the binary route file '%s' (%s bytes) is not valid", file, length));
+            }
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+            recordsCount = (int) ((length - HEADER_SIZE) / RECORD_SIZE);
+        } finally {
+            input.close();
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalArgumentException(String.format(
+                    "The file '%s' is not a binary route of version %s", file, FORMAT_VERSION));
+        }
+        if (recordsCount == 0) {
+            throw new IllegalArgumentException("The route must contain at least one waypoint");
+        }
+        firstTimestamp = getTimestamp(0);
+    }
+
+    private static int getOffset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    private long getTimestamp(int index) {
+        return buffer.getLong(getOffset(index) + TIME_OFFSET);
+    }
+
+    /**
+     * Validates the following record and makes it visible to readers.
+     *
+     * @return false if all the records have been already validated
+     * @throws IllegalArgumentException if the record is not valid
+     */
+    public boolean validateNext() {
+        int index = size;
+        if (index == recordsCount) {
+            return false;
+        }
+        GeoMath.validateCoordinates(getLatitude(index), getLongitude(index));
+        if (index > 0 && getTimestamp(index) < getTimestamp(index - 1)) {
+            throw new IllegalArgumentException(String.format(
+                    "Waypoint times must not decrease. %s is given after %s at the waypoint #%s",
+                    getTimestamp(index), getTimestamp(index - 1), index));
+        }
+        size = index + 1;
+        return true;
+    }
+
+    /**
+     * Marks the track as complete, so it could be looped. Records, which have not been validated
+     * by this moment, are never played back.
+     */
+    public void complete() {
+        isComplete = true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isComplete() {
+        return isComplete;
+    }
+
+    @Override
+    public double getLatitude(int index) {
+        return buffer.getInt(getOffset(index)) / COORDINATE_SCALE;
+    }
+
+    @Override
+    public double getLongitude(int index) {
+        return buffer.getInt(getOffset(index) + LONGITUDE_OFFSET) / COORDINATE_SCALE;
+    }
+
+    @Override
+    public double getAltitude(int index) {
+        return buffer.getInt(getOffset(index) + ALTITUDE_OFFSET) / ALTITUDE_SCALE;
+    }
+
+    @Override
+    public long getTime(int index) {
+        return getTimestamp(index) - firstTimestamp;
+    }
+}
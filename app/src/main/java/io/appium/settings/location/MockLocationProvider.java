@@ -20,6 +20,10 @@ import android.location.Location;
 
 public interface MockLocationProvider {
 
+    /**
+     * @param location the location to mock. The instance is reused for the following updates,
+     *                 so implementations must not keep it after the call returns.
+     */
     void setLocation(Location location);
 
     void enable();
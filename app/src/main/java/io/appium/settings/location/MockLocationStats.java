@@ -0,0 +1,283 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.location;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.appium.settings.helpers.JsonResponseWriter;
+
+/**
+ * Collects timing statistics of mock location updates, so clients could check whether
+ * the requested update rate is actually achieved. The lateness of each update is measured
+ * against its ideal fixed-rate schedule. Updates, which are already a whole interval late,
+ * are skipped and counted as missed deadlines. The latency and the failures of location
+ * calls are collected separately for each provider.
+ * Recording does not allocate, so it could be done on every update.
+ */
+public class MockLocationStats {
+    private static final int RECENT_SAMPLES_COUNT = 1024;
+
+    /**
+     * Durations in microseconds. Callers must synchronize access.
+     */
+    private static class Samples {
+        // The most recent values used to compute percentiles
+        private final long[] recentValues = new long[RECENT_SAMPLES_COUNT];
+        private long count = 0;
+        private long total = 0;
+        private long max = 0;
+
+        void add(long durationNanos) {
+            long value = TimeUnit.NANOSECONDS.toMicros(Math.max(0, durationNanos));
+            recentValues[(int) (count % RECENT_SAMPLES_COUNT)] = value;
+            count++;
+            total += value;
+            max = Math.max(max, value);
+        }
+
+        void clear() {
+            count = 0;
+            total = 0;
+            max = 0;
+        }
+
+        Samples copy() {
+            Samples result = new Samples();
+            System.arraycopy(recentValues, 0, result.recentValues, 0, RECENT_SAMPLES_COUNT);
+            result.count = count;
+            result.total = total;
+            result.max = max;
+            return result;
+        }
+
+        private static long getPercentile(long[] sortedValues, double percentile) {
+            int index = (int) Math.ceil(percentile / 100 * sortedValues.length) - 1;
+            return sortedValues[Math.max(0, Math.min(index, sortedValues.length - 1))];
+        }
+
+        /**
+         * Writes the JSON object with the mean, the maximum and percentiles of the recent values
+         * or null if there are no values. Must be called on a copy, since it sorts the values.
+         */
+        void write(JsonResponseWriter writer) {
+            if (count == 0) {
+                writer.nullValue();
+                return;
+            }
+            long[] recent = Arrays.copyOf(recentValues, (int) Math.min(count, RECENT_SAMPLES_COUNT));
+            Arrays.sort(recent);
+            writer.beginObject()
+                    .name("mean").value(total / count)
+                    .name("p50").value(getPercentile(recent, 50))
+                    .name("p90").value(getPercentile(recent, 90))
+                    .name("p99").value(getPercentile(recent, 99))
+                    .name("max").value(max)
+                    .endObject();
+        }
+    }
+
+    /**
+     * Statistics of location calls of a single provider
+     */
+    public static class ProviderStats {
+        private final String providerName;
+        private final Samples latency = new Samples();
+        private long failuresCount = 0;
+        private long skippedCount = 0;
+        @Nullable
+        private String lastError = null;
+
+        ProviderStats(String providerName) {
+            this.providerName = providerName;
+        }
+
+        /**
+         * @param latencyNanos the duration of the successful location call
+         */
+        public synchronized void recordSuccess(long latencyNanos) {
+            latency.add(latencyNanos);
+        }
+
+        /**
+         * @param latencyNanos the duration of the failed location call
+         * @param error the failure cause
+         */
+        public synchronized void recordFailure(long latencyNanos, Exception error) {
+            latency.add(latencyNanos);
+            failuresCount++;
+            // Providers wrap failures of asynchronous calls
+            lastError = error.getCause() == null ? error.toString() : error + ": " + error.getCause();
+        }
+
+        /**
+         * Records the update, which has been skipped, because the previous call has not returned yet.
+         */
+        public synchronized void recordSkipped() {
+            skippedCount++;
+        }
+
+        synchronized void clear() {
+            latency.clear();
+            failuresCount = 0;
+            skippedCount = 0;
+            lastError = null;
+        }
+
+        void write(JsonResponseWriter writer) {
+            Samples latency;
+            long failuresCount;
+            long skippedCount;
+            String lastError;
+            synchronized (this) {
+                latency = this.latency.copy();
+                failuresCount = this.failuresCount;
+                skippedCount = this.skippedCount;
+                lastError = this.lastError;
+            }
+            writer.beginObject()
+                    .name("name").value(providerName)
+                    .name("calls").value(latency.count)
+                    .name("failures").value(failuresCount)
+                    .name("skipped").value(skippedCount)
+                    .name("lastError").value(lastError);
+            writer.name("latencyUs");
+            latency.write(writer);
+            writer.endObject();
+        }
+    }
+
+    private final Samples lateness = new Samples();
+    private final List<ProviderStats> providers = new ArrayList<>();
+    private long intervalMs = 0;
+    private boolean isRunning = false;
+    private long missedCount = 0;
+
+    private MockLocationStats() {}
+
+    private static MockLocationStats instance = null;
+    public static synchronized MockLocationStats getInstance() {
+        if (instance == null) {
+            instance = new MockLocationStats();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts collecting statistics of the new update schedule.
+     *
+     * @param intervalMs the interval between updates in milliseconds
+     */
+    public synchronized void start(long intervalMs) {
+        lateness.clear();
+        missedCount = 0;
+        this.intervalMs = intervalMs;
+        this.isRunning = true;
+    }
+
+    public synchronized void stop() {
+        isRunning = false;
+    }
+
+    /**
+     * Resets the collected values without interrupting the schedule.
+     */
+    public synchronized void reset() {
+        lateness.clear();
+        missedCount = 0;
+        for (ProviderStats provider : providers) {
+            provider.clear();
+        }
+    }
+
+    /**
+     * Replaces statistics of the previously mocked providers.
+     *
+     * @param providerNames the names of currently mocked providers
+     * @return the statistics to record calls of each provider to, in the same order
+     */
+    public synchronized List<ProviderStats> setProviders(List<String> providerNames) {
+        providers.clear();
+        for (String name : providerNames) {
+            providers.add(new ProviderStats(name));
+        }
+        return new ArrayList<>(providers);
+    }
+
+    /**
+     * @param latenessNanos the delay of the performed update relatively to its ideal schedule
+     */
+    public synchronized void recordUpdate(long latenessNanos) {
+        lateness.add(latenessNanos);
+    }
+
+    /**
+     * Records the update, which has been skipped, because the following one was already due.
+     */
+    public synchronized void recordMissedDeadline() {
+        missedCount++;
+    }
+
+    /**
+     * Writes the JSON object with the update schedule statistics. Lateness values are in microseconds,
+     * percentiles are computed over the most recent updates.
+     *
+     * @param writer the writer to write the object to
+     */
+    public void writeSchedule(JsonResponseWriter writer) {
+        Samples lateness;
+        long intervalMs;
+        boolean isRunning;
+        long missedCount;
+        synchronized (this) {
+            lateness = this.lateness.copy();
+            intervalMs = this.intervalMs;
+            isRunning = this.isRunning;
+            missedCount = this.missedCount;
+        }
+        writer.beginObject()
+                .name("running").value(isRunning)
+                .name("intervalMs").value(intervalMs)
+                .name("updates").value(lateness.count)
+                .name("missedDeadlines").value(missedCount);
+        writer.name("latenessUs");
+        lateness.write(writer);
+        writer.endObject();
+    }
+
+    /**
+     * Writes the JSON array with location call statistics of each provider. Latency values are
+     * in microseconds, percentiles are computed over the most recent calls.
+     *
+     * @param writer the writer to write the array to
+     */
+    public void writeProviders(JsonResponseWriter writer) {
+        List<ProviderStats> providers;
+        synchronized (this) {
+            providers = new ArrayList<>(this.providers);
+        }
+        writer.beginArray();
+        for (ProviderStats provider : providers) {
+            provider.write(writer);
+        }
+        writer.endArray();
+    }
+}
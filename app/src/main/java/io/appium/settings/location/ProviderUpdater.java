@@ -0,0 +1,134 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.location;
+
+import android.location.Location;
+import android.util.Log;
+
+/**
+ * Sends mock locations to a single provider on its own thread, so a slow provider
+ * does not delay updates of the others. A new update is only accepted once the previous
+ * location call has returned, otherwise it is skipped instead of being queued.
+ * The location instance is reused, so sending updates does not allocate.
+ * The recorded latency covers the whole location call. Providers with asynchronous APIs
+ * wait for the result, so their latency and failures are recorded as well.
+ */
+public class ProviderUpdater implements Runnable {
+    private static final String TAG = ProviderUpdater.class.getSimpleName();
+
+    private final MockLocationProvider provider;
+    private final LocationFactory locationFactory;
+    private final MockLocationStats.ProviderStats stats;
+    private final Location location;
+    private final Thread thread;
+    // Guarded by this
+    private boolean isBusy = false;
+    private boolean isStopped = false;
+    // Only accessed on the updater thread
+    private boolean hasFailed = false;
+
+    /**
+     * @param provider the provider to send locations to
+     * @param locationFactory the factory to take mocked values from
+     * @param stats the statistics to record location calls to
+     */
+    public ProviderUpdater(MockLocationProvider provider, LocationFactory locationFactory,
+                           MockLocationStats.ProviderStats stats) {
+        this.provider = provider;
+        this.locationFactory = locationFactory;
+        this.stats = stats;
+        this.location = new Location(provider.getProviderName());
+        this.thread = new Thread(this, String.format("%s-%s", TAG, provider.getProviderName()));
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops the updater thread. Location calls waiting for an asynchronous result are interrupted.
+     */
+    public synchronized void stop() {
+        isStopped = true;
+        notifyAll();
+        thread.interrupt();
+    }
+
+    /**
+     * Takes the current mocked values and schedules sending them to the provider.
+     *
+     * @param accuracy the accuracy to set
+     * @return false if the update has been skipped, because the previous one is still in progress
+     */
+    public synchronized boolean requestUpdate(float accuracy) {
+        if (isStopped) {
+            return false;
+        }
+        if (isBusy) {
+            stats.recordSkipped();
+            return false;
+        }
+        locationFactory.updateLocation(location, accuracy);
+        isBusy = true;
+        notifyAll();
+        return true;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            synchronized (this) {
+                while (!isBusy && !isStopped) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (isStopped) {
+                    return;
+                }
+            }
+            setLocation();
+            synchronized (this) {
+                isBusy = false;
+            }
+        }
+    }
+
+    private void setLocation() {
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, String.format("Setting location of '%s' to '%s'", provider.getProviderName(), location));
+        }
+        long startNanos = System.nanoTime();
+        try {
+            provider.setLocation(location);
+            stats.recordSuccess(System.nanoTime() - startNanos);
+            if (hasFailed) {
+                Log.i(TAG, String.format("Location of '%s' is set again", provider.getProviderName()));
+                hasFailed = false;
+            }
+        } catch (Exception e) {
+            stats.recordFailure(System.nanoTime() - startNanos, e);
+            // Only the first failure in a row is logged, so frequent updates do not flood the log
+            if (!hasFailed) {
+                Log.e(TAG, String.format("Could not set location for '%s'", provider.getProviderName()), e);
+                hasFailed = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.location;
+
+import android.support.annotation.Nullable;
+
+import java.util.Locale;
+
+/**
+ * Formats of route files, which could be loaded by the location service.
+ */
+public enum RouteFormat {
+    /**
+     * Little-endian records of fixed size, see {@link MappedTrack}
+     */
+    BINARY("binary", ".bin"),
+    /**
+     * Lines formatted as latitude,longitude[,altitude[,value]]
+     */
+    CSV("csv", ".csv"),
+    /**
+     * GPS Exchange Format with track, route or waypoint points
+     */
+    GPX("gpx", ".gpx");
+
+    private final String name;
+    private final String extension;
+
+    RouteFormat(String name, String extension) {
+        this.name = name;
+        this.extension = extension;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Nullable
+    public static RouteFormat fromName(String name) {
+        for (RouteFormat format : values()) {
+            if (format.name.equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param fileName the name of the route file
+     * @return the format matching the file extension or null if the extension is unknown
+     */
+    @Nullable
+    public static RouteFormat fromFileName(String fileName) {
+        String lowerCaseName = fileName.toLowerCase(Locale.ROOT);
+        for (RouteFormat format : values()) {
+            if (lowerCaseName.endsWith(format.extension)) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
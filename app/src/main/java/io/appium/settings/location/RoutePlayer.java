@@ -0,0 +1,219 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.location;
+
+import android.location.Location;
+import android.os.SystemClock;
+
+/**
+ * Plays back a track in real time, optionally accelerated by the time warp multiplier.
+ * Positions between waypoints are interpolated along great-circle segments and
+ * the bearing and the speed are derived from the segment being travelled.
+ * The playback position is the time in milliseconds since the first waypoint of the track.
+ */
+public class RoutePlayer {
+    private final Track track;
+    private boolean isLooped = false;
+    private double timeWarp = 1;
+    private boolean isPaused = false;
+    // The playback position at the moment of the most recent state change
+    private double anchorPosition = 0;
+    private long anchorRealtime;
+    // Reused to avoid allocations while interpolating
+    private final double[] point = new double[2];
+
+    public RoutePlayer(Track track) {
+        this.track = track;
+        this.anchorRealtime = SystemClock.elapsedRealtime();
+    }
+
+    private double getRawPosition(long realtime) {
+        return isPaused ? anchorPosition : anchorPosition + (realtime - anchorRealtime) * timeWarp;
+    }
+
+    /**
+     * Fixes the current position, so the playback state could be changed from this point.
+     */
+    private void reanchor() {
+        long realtime = SystemClock.elapsedRealtime();
+        anchorPosition = getCurrentPosition(realtime);
+        anchorRealtime = realtime;
+    }
+
+    /**
+     * The playback waits at the last waypoint of an incomplete track, so it continues from there
+     * once more waypoints are loaded instead of jumping ahead by the time spent waiting.
+     */
+    private double getCurrentPosition(long realtime) {
+        double rawPosition = getRawPosition(realtime);
+        double position = normalizePosition(rawPosition);
+        if (position < rawPosition && !track.isComplete()) {
+            anchorPosition = position;
+            anchorRealtime = realtime;
+        }
+        return position;
+    }
+
+    private double normalizePosition(double position) {
+        int size = track.size();
+        if (size == 0) {
+            return 0;
+        }
+        long duration = track.getTime(size - 1);
+        if (position < 0) {
+            return 0;
+        }
+        if (position <= duration) {
+            return position;
+        }
+        if (isLooped && track.isComplete() && duration > 0) {
+            return position % duration;
+        }
+        return duration;
+    }
+
+    public synchronized void pause() {
+        reanchor();
+        isPaused = true;
+    }
+
+    public synchronized void resume() {
+        reanchor();
+        isPaused = false;
+    }
+
+    public synchronized boolean isPaused() {
+        return isPaused;
+    }
+
+    /**
+     * @param position the playback position to move to in milliseconds since the first waypoint
+     */
+    public synchronized void seek(long position) {
+        reanchor();
+        anchorPosition = normalizePosition(position);
+    }
+
+    /**
+     * @param isLooped whether to start the playback over once the end of the track is reached
+     */
+    public synchronized void setLooped(boolean isLooped) {
+        reanchor();
+        this.isLooped = isLooped;
+    }
+
+    /**
+     * @param timeWarp the playback speed multiplier
+     * @throws IllegalArgumentException if the multiplier is not positive
+     */
+    public static void validateTimeWarp(double timeWarp) {
+        if (!(timeWarp > 0) || Double.isInfinite(timeWarp)) {
+            throw new IllegalArgumentException(String.format(
+                    "The time warp must be a positive number. %s is given instead", timeWarp));
+        }
+    }
+
+    /**
+     * @param timeWarp the playback speed multiplier
+     * @throws IllegalArgumentException if the multiplier is not positive
+     */
+    public synchronized void setTimeWarp(double timeWarp) {
+        validateTimeWarp(timeWarp);
+        reanchor();
+        this.timeWarp = timeWarp;
+    }
+
+    /**
+     * @return the current playback position in milliseconds since the first waypoint
+     */
+    public long getPosition() {
+        return getPosition(SystemClock.elapsedRealtime());
+    }
+
+    synchronized long getPosition(long realtime) {
+        return Math.round(getCurrentPosition(realtime));
+    }
+
+    /**
+     * @return the index of the last waypoint, which is not later than the given position
+     */
+    private int findSegment(double position, int size) {
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (track.getTime(middle) <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Sets the coordinates, the altitude, the bearing and the speed of the given location
+     * to the values at the current playback position.
+     *
+     * @param location the location to update
+     * @return false if the track has no waypoints yet, so the location has not been updated
+     */
+    public synchronized boolean fill(Location location) {
+        int size = track.size();
+        if (size == 0) {
+            return false;
+        }
+        double position = getCurrentPosition(SystemClock.elapsedRealtime());
+        int index = findSegment(position, size);
+        double latitude1 = track.getLatitude(index);
+        double longitude1 = track.getLongitude(index);
+        if (index == size - 1) {
+            // The end of the track is reached or the rest of it has not been loaded yet
+            location.setLatitude(latitude1);
+            location.setLongitude(longitude1);
+            location.setAltitude(track.getAltitude(index));
+            location.setSpeed(0);
+            if (index > 0) {
+                location.setBearing((float) GeoMath.getBearing(track.getLatitude(index - 1),
+                        track.getLongitude(index - 1), latitude1, longitude1));
+            } else {
+                location.setBearing(0);
+            }
+            return true;
+        }
+        double latitude2 = track.getLatitude(index + 1);
+        double longitude2 = track.getLongitude(index + 1);
+        long startTime = track.getTime(index);
+        long duration = track.getTime(index + 1) - startTime;
+        double fraction = duration > 0 ? Math.min(1, (position - startTime) / duration) : 1;
+        GeoMath.interpolate(latitude1, longitude1, latitude2, longitude2, fraction, point);
+        location.setLatitude(point[0]);
+        location.setLongitude(point[1]);
+        double altitude1 = track.getAltitude(index);
+        location.setAltitude(altitude1 + (track.getAltitude(index + 1) - altitude1) * fraction);
+        location.setBearing((float) (fraction < 1
+                ? GeoMath.getBearing(point[0], point[1], latitude2, longitude2)
+                : GeoMath.getBearing(latitude1, longitude1, latitude2, longitude2)));
+        double speed = 0;
+        if (duration > 0 && !isPaused) {
+            // The speed is scaled, so it matches the apparent movement
+            speed = GeoMath.getDistance(latitude1, longitude1, latitude2, longitude2) / duration * 1000 * timeWarp;
+        }
+        location.setSpeed((float) speed);
+        return true;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.location;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Defines how waypoint times of a route are specified.
+ */
+public enum RouteTiming {
+    /**
+     * Each waypoint has the timestamp in milliseconds. Only differences between timestamps matter,
+     * so they could be either relative or absolute.
+     */
+    TIME("time"),
+    /**
+     * Each waypoint has the speed in meters per second to move to the next waypoint with.
+     */
+    SPEED("speed");
+
+    private final String name;
+
+    RouteTiming(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Nullable
+    public static RouteTiming fromName(String name) {
+        for (RouteTiming timing : values()) {
+            if (timing.name.equalsIgnoreCase(name)) {
+                return timing;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.location;
+
+/**
+ * Sequence of waypoints to play back. Waypoint times are non-decreasing.
+ * Tracks might still be growing while they are played back, so readers must
+ * not access waypoints beyond the {@link #size()} they have observed.
+ */
+public interface Track {
+    /**
+     * @return the count of waypoints available so far
+     */
+    int size();
+
+    /**
+     * @return true if no more waypoints are going to be added to the track
+     */
+    boolean isComplete();
+
+    double getLatitude(int index);
+
+    double getLongitude(int index);
+
+    double getAltitude(int index);
+
+    /**
+     * @param index the waypoint index
+     * @return the time of the waypoint in milliseconds since the first waypoint
+     */
+    long getTime(int index);
+}
@@ -0,0 +1,130 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.location;
+
+/**
+ * Builds a track from waypoints having either timestamps or speeds.
+ * Waypoint times are computed as waypoints arrive, so the track could be played back
+ * while it is still being built.
+ */
+public class TrackBuilder {
+    private final ArrayTrack track;
+    private final RouteTiming timing;
+    private final double defaultSpeed;
+    private long firstTimestamp = 0;
+    private double previousLatitude;
+    private double previousLongitude;
+    private double previousSpeed;
+    private long previousTime;
+
+    /**
+     * @param timing how waypoint times are specified
+     * @param defaultSpeed the speed in meters per second for waypoints without the speed
+     *                     or NaN if the speed is required
+     */
+    public TrackBuilder(RouteTiming timing, double defaultSpeed) {
+        this(new ArrayTrack(), timing, defaultSpeed);
+    }
+
+    /**
+     * @param track the empty track to add waypoints to
+     * @param timing how waypoint times are specified
+     * @param defaultSpeed the speed in meters per second for waypoints without the speed
+     *                     or NaN if the speed is required
+     */
+    TrackBuilder(ArrayTrack track, RouteTiming timing, double defaultSpeed) {
+        this.track = track;
+        this.timing = timing;
+        this.defaultSpeed = defaultSpeed;
+    }
+
+    /**
+     * @param latitude the waypoint latitude in degrees
+     * @param longitude the waypoint longitude in degrees
+     * @param altitude the waypoint altitude in meters
+     * @param value the waypoint timestamp in milliseconds or its speed in meters per second
+     *              depending on the timing. NaN if it is missing.
+     * @throws IllegalArgumentException if the waypoint is not valid
+     */
+    public void add(double latitude, double longitude, double altitude, double value) {
+        GeoMath.validateCoordinates(latitude, longitude);
+        long time;
+        int index = track.size();
+        if (timing == RouteTiming.TIME) {
+            if (Double.isNaN(value)) {
+                throw new IllegalArgumentException(String.format("The waypoint #%s has no timestamp", index));
+            }
+            if (index == 0) {
+                firstTimestamp = Math.round(value);
+            }
+            time = Math.round(value) - firstTimestamp;
+        } else {
+            time = 0;
+            if (index > 0) {
+                if (!(previousSpeed > 0)) {
+                    throw new IllegalArgumentException(String.format(
+                            "The waypoint #%s must have a positive speed. %s is given instead",
+                            index - 1, previousSpeed));
+                }
+                double distance = GeoMath.getDistance(previousLatitude, previousLongitude, latitude, longitude);
+                time = previousTime + Math.round(distance / previousSpeed * 1000);
+            }
+            previousSpeed = Double.isNaN(value) ? defaultSpeed : value;
+        }
+        track.add(latitude, longitude, altitude, time);
+        previousLatitude = latitude;
+        previousLongitude = longitude;
+        previousTime = time;
+    }
+
+    /**
+     * @param waypoint the waypoint formatted as latitude,longitude[,altitude[,value]],
+     *                 where value is either the timestamp or the speed depending on the timing
+     * @throws IllegalArgumentException if the waypoint is not valid
+     */
+    public void add(String waypoint) {
+        String[] fields = waypoint.split(",");
+        if (fields.length < 2 || fields.length > 4) {
+            throw new IllegalArgumentException(String.format("The waypoint '%s' should be formatted as " +
+                    "latitude,longitude[,altitude[,%s]]", waypoint.trim(), timing.getName()));
+        }
+        try {
+            add(Double.parseDouble(fields[0].trim()), Double.parseDouble(fields[1].trim()),
+                    fields.length > 2 ? Double.parseDouble(fields[2].trim()) : 0,
+                    fields.length > 3 ? Double.parseDouble(fields[3].trim()) : Double.NaN);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format(
+                    "The waypoint '%s' contains an invalid number", waypoint.trim()));
+        }
+    }
+
+    /**
+     * Marks the track as complete.
+     *
+     * @throws IllegalArgumentException if the track has no waypoints
+     */
+    public void complete() {
+        if (track.size() == 0) {
+            throw new IllegalArgumentException("The route must contain at least one waypoint");
+        }
+        track.complete();
+    }
+
+    public Track getTrack() {
+        return track;
+    }
+}
@@ -0,0 +1,268 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.location;
+
+import android.util.Log;
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Loads tracks from route files pushed to the device storage.
+ * Binary files are memory-mapped and validated on a background thread. Text files are streamed
+ * on a background thread into a growing {@link ArrayTrack}, which keeps all of their waypoints
+ * in memory. In both cases the playback could start before the whole file is processed.
+ */
+public class TrackLoader {
+    private static final String TAG = TrackLoader.class.getSimpleName();
+    private static final Pattern TIMESTAMP_PATTERN = Pattern.compile(
+            "(\\d{4})-(\\d{2})-(\\d{2})T(\\d{2}):(\\d{2}):(\\d{2})(?:\\.(\\d+))?(Z|[+-]\\d{2}:?\\d{2})?");
+
+    private final File file;
+    private final RouteFormat format;
+    private final RouteTiming timing;
+    private final double defaultSpeed;
+    private final ArrayTrack track = new ArrayTrack();
+    // Only accessed on the loader thread
+    private final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    private volatile boolean isCancelled = false;
+
+    /**
+     * @param file the route file
+     * @param format the format of the file
+     * @param timing how waypoint times are specified in CSV files
+     * @param defaultSpeed the speed in meters per second for waypoints without the speed
+     *                     or NaN if the speed is required
+     */
+    public TrackLoader(File file, RouteFormat format, RouteTiming timing, double defaultSpeed) {
+        this.file = file;
+        this.format = format;
+        this.timing = timing;
+        this.defaultSpeed = defaultSpeed;
+    }
+
+    /**
+     * Starts loading the file.
+     *
+     * @return the track, which might still be growing while the file is being parsed
+     * @throws IOException if the file cannot be opened
+     * @throws IllegalArgumentException if the binary file header is not valid
+     */
+    public Track load() throws IOException {
+        if (format == RouteFormat.BINARY) {
+            final MappedTrack mappedTrack = new MappedTrack(file);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    validate(mappedTrack);
+                }
+            }, TAG).start();
+            return mappedTrack;
+        }
+        // StandardCharsets requires API 19, while API 18 is still supported
+        //noinspection CharsetObjectCanBeUsed
+        final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                read(reader);
+            }
+        }, TAG);
+        thread.start();
+        return track;
+    }
+
+    /**
+     * Stops parsing the file. The waypoints loaded so far are kept.
+     */
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    private void validate(MappedTrack mappedTrack) {
+        long startTime = System.currentTimeMillis();
+        try {
+            //noinspection StatementWithEmptyBody
+            while (!isCancelled && mappedTrack.validateNext()) {
+            }
+            Log.i(TAG, String.format("Validated %s waypoints of '%s' in %sms", mappedTrack.size(), file,
+                    System.currentTimeMillis() - startTime));
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, String.format("The route '%s' is not valid. Only %s waypoints are played back",
+                    file, mappedTrack.size()), e);
+        } finally {
+            // Let the validated part of the route be looped
+            mappedTrack.complete();
+        }
+    }
+
+    private void read(BufferedReader reader) {
+        long startTime = System.currentTimeMillis();
+        try {
+            if (format == RouteFormat.GPX) {
+                readGpx(reader);
+            } else {
+                readCsv(reader);
+            }
+            Log.i(TAG, String.format("Loaded %s waypoints from '%s' in %sms", track.size(), file,
+                    System.currentTimeMillis() - startTime));
+        } catch (IOException | XmlPullParserException | IllegalArgumentException e) {
+            Log.e(TAG, String.format("Cannot load the route from '%s'. Only %s waypoints have been loaded",
+                    file, track.size()), e);
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            // Let the loaded part of the route be looped
+            track.complete();
+        }
+    }
+
+    private void readCsv(BufferedReader reader) throws IOException {
+        TrackBuilder builder = new TrackBuilder(track, timing, defaultSpeed);
+        boolean isFirstRecord = true;
+        String line;
+        while (!isCancelled && (line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            // The optional header line starts with a column name rather than with a number
+            char firstChar = line.charAt(0);
+            boolean isHeader = isFirstRecord && !Character.isDigit(firstChar)
+                    && firstChar != '-' && firstChar != '+' && firstChar != '.';
+            isFirstRecord = false;
+            if (!isHeader) {
+                builder.add(line);
+            }
+        }
+    }
+
+    private static String getLocalName(String name) {
+        return name.substring(name.indexOf(':') + 1);
+    }
+
+    private static boolean isPointElement(String name) {
+        return "trkpt".equals(name) || "rtept".equals(name) || "wpt".equals(name);
+    }
+
+    private static double parseCoordinate(XmlPullParser parser, String name) {
+        String value = parser.getAttributeValue(null, name);
+        try {
+            return Double.parseDouble(value);
+        } catch (NullPointerException | NumberFormatException e) {
+            throw new IllegalArgumentException(String.format(
+                    "The point attribute '%s' should be a valid number. '%s' is given instead", name, value));
+        }
+    }
+
+    /**
+     * Reads track, route and waypoint points in the document order. The track is timed
+     * by point timestamps if the first point has one, otherwise points are travelled
+     * with the default speed.
+     */
+    private void readGpx(BufferedReader reader) throws IOException, XmlPullParserException {
+        XmlPullParser parser = Xml.newPullParser();
+        parser.setInput(reader);
+        TrackBuilder builder = null;
+        RouteTiming gpxTiming = RouteTiming.SPEED;
+        StringBuilder text = new StringBuilder();
+        boolean isInPoint = false;
+        double latitude = 0;
+        double longitude = 0;
+        double altitude = 0;
+        double timestamp = Double.NaN;
+        for (int event = parser.getEventType();
+             event != XmlPullParser.END_DOCUMENT && !isCancelled;
+             event = parser.next()) {
+            if (event == XmlPullParser.START_TAG) {
+                text.setLength(0);
+                if (isPointElement(getLocalName(parser.getName()))) {
+                    isInPoint = true;
+                    latitude = parseCoordinate(parser, "lat");
+                    longitude = parseCoordinate(parser, "lon");
+                    altitude = 0;
+                    timestamp = Double.NaN;
+                }
+            } else if (event == XmlPullParser.TEXT) {
+                text.append(parser.getText());
+            } else if (event == XmlPullParser.END_TAG && isInPoint) {
+                String name = getLocalName(parser.getName());
+                if ("ele".equals(name)) {
+                    try {
+                        altitude = Double.parseDouble(text.toString().trim());
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException(String.format(
+                                "The elevation '%s' is not a valid number", text.toString().trim()));
+                    }
+                } else if ("time".equals(name)) {
+                    timestamp = parseTimestamp(text.toString().trim());
+                } else if (isPointElement(name)) {
+                    isInPoint = false;
+                    if (builder == null) {
+                        gpxTiming = Double.isNaN(timestamp) ? RouteTiming.SPEED : RouteTiming.TIME;
+                        builder = new TrackBuilder(track, gpxTiming, defaultSpeed);
+                    }
+                    builder.add(latitude, longitude, altitude,
+                            gpxTiming == RouteTiming.TIME ? timestamp : Double.NaN);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param value ISO 8601 date and time, for example 2024-01-31T12:00:00.5Z
+     * @return the number of milliseconds since the epoch
+     */
+    private double parseTimestamp(String value) {
+        Matcher matcher = TIMESTAMP_PATTERN.matcher(value);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException(String.format(
+                    "The time '%s' should be formatted as yyyy-MM-ddTHH:mm:ss[.SSS]Z", value));
+        }
+        calendar.clear();
+        calendar.set(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)) - 1,
+                Integer.parseInt(matcher.group(3)), Integer.parseInt(matcher.group(4)),
+                Integer.parseInt(matcher.group(5)), Integer.parseInt(matcher.group(6)));
+        double result = calendar.getTimeInMillis();
+        if (matcher.group(7) != null) {
+            result += Double.parseDouble("0." + matcher.group(7)) * 1000;
+        }
+        String zone = matcher.group(8);
+        if (zone != null && !"Z".equals(zone)) {
+            String digits = zone.substring(1).replace(":", "");
+            int offsetMinutes = Integer.parseInt(digits.substring(0, 2)) * 60
+                    + Integer.parseInt(digits.substring(2));
+            result -= (zone.charAt(0) == '-' ? -1 : 1) * offsetMinutes * 60000L;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.notifications;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Defines which item is dropped once the notifications buffer runs out of its capacity
+ * or memory budget.
+ */
+public enum EvictionPolicy {
+    /**
+     * The oldest item marked as removed is evicted first.
+     * The oldest item is evicted if there are no removed items.
+     */
+    REMOVED_FIRST("removedFirst"),
+    /**
+     * The oldest item is evicted.
+     */
+    OLDEST_FIRST("oldestFirst");
+
+    private final String name;
+
+    EvictionPolicy(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Nullable
+    public static EvictionPolicy fromName(String name) {
+        for (EvictionPolicy policy : values()) {
+            if (policy.name.equalsIgnoreCase(name)) {
+                return policy;
+            }
+        }
+        return null;
+    }
+}
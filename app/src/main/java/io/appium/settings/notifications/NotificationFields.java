@@ -0,0 +1,100 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.notifications;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The set of notification properties to serialize.
+ * Top-level properties are selected by their names, for example {@code packageName},
+ * and properties of the nested notification object are prefixed with {@code notification.},
+ * for example {@code notification.title}.
+ */
+public class NotificationFields {
+    public static final NotificationFields ALL = new NotificationFields(
+            new HashSet<String>(), new HashSet<String>(), true);
+
+    static final List<String> PROPERTIES = Arrays.asList(
+            "packageName", "isClearable", "isOngoing", "id", "tag", "postTime", "notification",
+            "isGroup", "userHandle", "groupKey", "overrideGroupKey", "key", "isRemoved",
+            "sequence", "updateCount"
+    );
+    static final List<String> CONTENT_PROPERTIES = Arrays.asList(
+            "title", "bigTitle", "text", "bigText", "tickerText", "subText", "infoText", "template"
+    );
+    private static final String CONTENT_PREFIX = "notification.";
+
+    private final Set<String> properties;
+    private final Set<String> contentProperties;
+    private final boolean isAll;
+
+    private NotificationFields(Set<String> properties, Set<String> contentProperties, boolean isAll) {
+        this.properties = properties;
+        this.contentProperties = contentProperties;
+        this.isAll = isAll;
+    }
+
+    /**
+     * @param spec comma-separated list of property names, for example
+     *             {@code packageName,notification.title,notification.text,isRemoved}
+     * @return the parsed projection
+     * @throws IllegalArgumentException if any of the given names is unknown
+     */
+    public static NotificationFields parse(String spec) {
+        Set<String> properties = new HashSet<>();
+        Set<String> contentProperties = new HashSet<>();
+        for (String item : spec.split(",")) {
+            String name = item.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (name.startsWith(CONTENT_PREFIX)
+                    && CONTENT_PROPERTIES.contains(name.substring(CONTENT_PREFIX.length()))) {
+                properties.add("notification");
+                contentProperties.add(name.substring(CONTENT_PREFIX.length()));
+            } else if (name.equals("notification")) {
+                properties.add(name);
+                contentProperties.addAll(CONTENT_PROPERTIES);
+            } else if (PROPERTIES.contains(name)) {
+                properties.add(name);
+            } else {
+                throw new IllegalArgumentException(String.format(
+                        "'%s' is not a known notification property. Only %s and %s%s are supported",
+                        name, PROPERTIES, CONTENT_PREFIX, CONTENT_PROPERTIES));
+            }
+        }
+        if (properties.isEmpty()) {
+            return ALL;
+        }
+        return new NotificationFields(properties, contentProperties, false);
+    }
+
+    public boolean isAll() {
+        return isAll;
+    }
+
+    public boolean includes(String name) {
+        return isAll || properties.contains(name);
+    }
+
+    public boolean includesContent(String name) {
+        return isAll || contentProperties.contains(name);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.notifications;
+
+import android.support.annotation.Nullable;
+
+import java.util.regex.Pattern;
+
+/**
+ * Criteria to select buffered notifications. Filters are evaluated
+ * against the properties of stored items, so nothing gets serialized
+ * for notifications that do not match.
+ */
+public class NotificationsFilter {
+    private String packageName;
+    private String key;
+    private boolean includeRemoved = true;
+    private String titleContains;
+    private String textContains;
+    private Pattern titlePattern;
+    private Pattern textPattern;
+    private long postedAfter = Long.MIN_VALUE;
+    private long postedBefore = Long.MAX_VALUE;
+    private int limit = 0;
+
+    public NotificationsFilter setPackageName(@Nullable String packageName) {
+        this.packageName = packageName;
+        return this;
+    }
+
+    public NotificationsFilter setKey(@Nullable String key) {
+        this.key = key;
+        return this;
+    }
+
+    @Nullable
+    public String getKey() {
+        return key;
+    }
+
+    public NotificationsFilter setIncludeRemoved(boolean includeRemoved) {
+        this.includeRemoved = includeRemoved;
+        return this;
+    }
+
+    public NotificationsFilter setTitleContains(@Nullable String titleContains) {
+        this.titleContains = titleContains;
+        return this;
+    }
+
+    public NotificationsFilter setTextContains(@Nullable String textContains) {
+        this.textContains = textContains;
+        return this;
+    }
+
+    public NotificationsFilter setTitlePattern(@Nullable Pattern titlePattern) {
+        this.titlePattern = titlePattern;
+        return this;
+    }
+
+    public NotificationsFilter setTextPattern(@Nullable Pattern textPattern) {
+        this.textPattern = textPattern;
+        return this;
+    }
+
+    /**
+     * @param postedAfter the minimum post time in milliseconds since epoch (inclusive)
+     */
+    public NotificationsFilter setPostedAfter(long postedAfter) {
+        this.postedAfter = postedAfter;
+        return this;
+    }
+
+    /**
+     * @param postedBefore the maximum post time in milliseconds since epoch (inclusive)
+     */
+    public NotificationsFilter setPostedBefore(long postedBefore) {
+        this.postedBefore = postedBefore;
+        return this;
+    }
+
+    /**
+     * @param limit the maximum number of items to select. Zero or a negative value means no limit.
+     */
+    public NotificationsFilter setLimit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    public boolean isLimitReached(int count) {
+        return limit > 0 && count >= limit;
+    }
+
+    private static boolean matches(@Nullable String value, @Nullable String substring,
+                                   @Nullable Pattern pattern) {
+        if (substring != null && (value == null || !value.contains(substring))) {
+            return false;
+        }
+        return pattern == null || (value != null && pattern.matcher(value).find());
+    }
+
+    public boolean matches(StoredNotification item) {
+        if (!includeRemoved && item.isRemoved()) {
+            return false;
+        }
+        if (key != null && !key.equals(item.getKey())) {
+            return false;
+        }
+        if (packageName != null && !packageName.equals(item.getPackageName())) {
+            return false;
+        }
+        if (item.getPostTime() < postedAfter || item.getPostTime() > postedBefore) {
+            return false;
+        }
+        return matches(item.getTitle(), titleContains, titlePattern)
+                && matches(item.getText(), textContains, textPattern);
+    }
+}
@@ -0,0 +1,320 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.notifications;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only on-disk log of posted and removed notifications, which allows to restore
+ * the notifications history after the listener service has been recreated or the process
+ * has been restarted.
+ * All file operations are performed on a dedicated thread, so callers never block on them.
+ * The journal is compacted to the current content of the store once it contains
+ * too many outdated records.
+ */
+public class NotificationsJournal {
+    private static final String TAG = NotificationsJournal.class.getSimpleName();
+    // Version 2 keeps sequence numbers of changes in records
+    private static final int FORMAT_VERSION = 2;
+    private static final byte POSTED_RECORD = 1;
+    private static final byte REMOVED_RECORD = 2;
+    static final int MIN_RECORDS_TO_COMPACT = 256;
+
+    private final File file;
+    private final NotificationsStore store;
+    private HandlerThread thread = null;
+    private Handler handler = null;
+    // Only accessed on the journal thread
+    private DataOutputStream output = null;
+    private int recordsCount = 0;
+
+    /**
+     * @param file the file to keep the journal in
+     * @param store the store to restore the history to and to compact the journal from
+     */
+    public NotificationsJournal(File file, NotificationsStore store) {
+        this.file = file;
+        this.store = store;
+    }
+
+    /**
+     * Starts the journal thread and restores the notifications history from the file.
+     * The call does nothing if the journal has been already started.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new HandlerThread(TAG);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                restore();
+            }
+        });
+    }
+
+    /**
+     * Writes the pending records and stops the journal thread.
+     */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                closeOutput();
+            }
+        });
+        thread.quitSafely();
+        thread = null;
+        handler = null;
+    }
+
+    /**
+     * Schedules the given task to be executed on the journal thread after the history has been
+     * restored and all the previously recorded changes have been written.
+     *
+     * @param task the task to execute
+     */
+    public synchronized void post(Runnable task) {
+        if (handler != null) {
+            handler.post(task);
+        }
+    }
+
+    /**
+     * Records the notification, which has been put to the store.
+     *
+     * @param item the stored item
+     */
+    public void recordPosted(final StoredNotification item) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                writePosted(item);
+            }
+        });
+    }
+
+    /**
+     * Records the notification, which has been marked as removed in the store.
+     *
+     * @param item the item marked as removed
+     */
+    public void recordRemoved(final StoredNotification item) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                writeRemoved(item);
+            }
+        });
+    }
+
+    // The following methods are only called on the journal thread or directly by tests
+
+    void writePosted(StoredNotification item) {
+        try {
+            writePostedRecord(openOutput(), item);
+            onRecordWritten();
+        } catch (IOException e) {
+            onWriteFailed(e);
+        }
+    }
+
+    void writeRemoved(StoredNotification item) {
+        try {
+            openOutput().writeByte(REMOVED_RECORD);
+            output.writeLong(item.getSequence());
+            output.writeUTF(item.getKey());
+            onRecordWritten();
+        } catch (IOException e) {
+            onWriteFailed(e);
+        }
+    }
+
+    int getRecordsCount() {
+        return recordsCount;
+    }
+
+    private static void writePostedRecord(DataOutputStream output, StoredNotification item) throws IOException {
+        output.writeByte(POSTED_RECORD);
+        output.writeLong(item.getSequence());
+        item.writeTo(output);
+    }
+
+    private DataOutputStream openOutput() throws IOException {
+        if (output == null) {
+            boolean isNew = !file.exists() || file.length() == 0;
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            if (isNew) {
+                output.writeInt(FORMAT_VERSION);
+            }
+        }
+        return output;
+    }
+
+    void closeOutput() {
+        if (output == null) {
+            return;
+        }
+        try {
+            output.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot close the notifications journal", e);
+        }
+        output = null;
+    }
+
+    private void onRecordWritten() throws IOException {
+        // Records are small, so flushing each of them is cheap and keeps the file consistent
+        output.flush();
+        recordsCount++;
+        if (recordsCount > MIN_RECORDS_TO_COMPACT && recordsCount > 2 * store.size()) {
+            compact();
+        }
+    }
+
+    private void onWriteFailed(IOException e) {
+        Log.e(TAG, "Cannot write to the notifications journal", e);
+        // Rewrite the journal, so a partially written record does not break the following ones
+        compact();
+    }
+
+    /**
+     * Replaces the journal with the current content of the store.
+     */
+    private void compact() {
+        closeOutput();
+        List<StoredNotification> items = store.getSnapshot().toList();
+        File compactedFile = new File(file.getPath() + ".tmp");
+        try {
+            DataOutputStream compactedOutput = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(compactedFile)));
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+                compactedOutput.writeInt(FORMAT_VERSION);
+                // Restoring preserves the posting order
+                for (int i = items.size() - 1; i >= 0; i--) {
+                    writePostedRecord(compactedOutput, items.get(i));
+                }
+            } finally {
+                compactedOutput.close();
+            }
+            if (!compactedFile.renameTo(file)) {
+                throw new IOException(String.format("Cannot rename %s to %s", compactedFile, file));
+            }
+            recordsCount = items.size();
+            Log.d(TAG, String.format("Compacted the notifications journal to %s records", recordsCount));
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot compact the notifications journal", e);
+            //noinspection ResultOfMethodCallIgnored
+            compactedFile.delete();
+        }
+    }
+
+    /**
+     * @return the notifications read from the journal, the most recently posted item goes first,
+     * or null if the journal does not exist or cannot be read
+     */
+    @Nullable
+    private List<StoredNotification> read() {
+        DataInputStream input;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        // The most recently posted item goes last
+        Map<String, StoredNotification> items = new LinkedHashMap<>();
+        int count = 0;
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            int version = input.readInt();
+            if (version != FORMAT_VERSION) {
+                Log.w(TAG, String.format("The notifications journal format %s is not supported", version));
+                return null;
+            }
+            //noinspection InfiniteLoopStatement
+            while (true) {
+                byte recordType = input.readByte();
+                long sequence = input.readLong();
+                if (recordType == POSTED_RECORD) {
+                    StoredNotification item = StoredNotification.readFrom(input);
+                    item.setSequence(sequence);
+                    items.remove(item.getKey());
+                    items.put(item.getKey(), item);
+                } else if (recordType == REMOVED_RECORD) {
+                    String key = input.readUTF();
+                    StoredNotification item = items.get(key);
+                    if (item != null && !item.isRemoved()) {
+                        items.put(key, item.toRemoved(sequence));
+                    }
+                } else {
+                    throw new IOException(String.format("Unknown record type %s", recordType));
+                }
+                count++;
+            }
+        } catch (EOFException e) {
+            // The last record might be incomplete if the process has been killed while writing it
+        } catch (IOException e) {
+            Log.w(TAG, String.format("The notifications journal is corrupted after %s records. " +
+                    "The rest of it is ignored", count), e);
+        } finally {
+            try {
+                input.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        List<StoredNotification> result = new ArrayList<>(items.values());
+        Collections.reverse(result);
+        return result;
+    }
+
+    void restore() {
+        List<StoredNotification> items = read();
+        if (items != null && !items.isEmpty()) {
+            store.restore(items);
+            Log.d(TAG, String.format("Restored %s notifications from the journal", items.size()));
+        }
+        // Drop outdated and incomplete records
+        compact();
+    }
+}
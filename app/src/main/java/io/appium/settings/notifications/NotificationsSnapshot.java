@@ -0,0 +1,204 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.notifications;
+
+import android.support.annotation.Nullable;
+import io.appium.settings.helpers.JsonResponseWriter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable view of the notifications store content at some point of time.
+ * The store publishes a new snapshot after each change, so readers do not need to lock the store.
+ * The snapshot shares the post log with the store and only sees its entries in the state
+ * they had when the snapshot has been published.
+ */
+public class NotificationsSnapshot {
+    static final NotificationsSnapshot EMPTY = new NotificationsSnapshot(
+            new Usage(NotificationsStore.DEFAULT_CAPACITY, 0, 0, 0, EvictionPolicy.REMOVED_FIRST));
+
+    /**
+     * Buffer limits and their current utilization
+     */
+    public static class Usage {
+        private final int capacity;
+        private final long maxBytes;
+        private final long retainedBytes;
+        private final long evictedCount;
+        private final EvictionPolicy evictionPolicy;
+
+        Usage(int capacity, long maxBytes, long retainedBytes, long evictedCount,
+              EvictionPolicy evictionPolicy) {
+            this.capacity = capacity;
+            this.maxBytes = maxBytes;
+            this.retainedBytes = retainedBytes;
+            this.evictedCount = evictedCount;
+            this.evictionPolicy = evictionPolicy;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public long getRetainedBytes() {
+            return retainedBytes;
+        }
+
+        public long getEvictedCount() {
+            return evictedCount;
+        }
+
+        public EvictionPolicy getEvictionPolicy() {
+            return evictionPolicy;
+        }
+    }
+
+    // The most recently posted item goes last
+    private final StoreEntry[] postLog;
+    private final int postLogLength;
+    // The most recent change goes last
+    private final StoreEntry[] changeLog;
+    private final long[] changeSequences;
+    private final int changeLogLength;
+    private final int size;
+    private final long generation;
+    private final long lastSequence;
+    private final Usage usage;
+    // Built on the first read, so publishing a snapshot does not depend on the buffer size.
+    // Concurrent reads may build them twice, which is harmless since the content is the same.
+    private volatile List<StoredNotification> items = null;
+    private volatile Map<String, StoredNotification> keyIndex = null;
+
+    NotificationsSnapshot(StoreEntry[] postLog, int postLogLength, StoreEntry[] changeLog,
+                          long[] changeSequences, int changeLogLength, int size, long generation,
+                          long lastSequence, Usage usage) {
+        this.postLog = postLog;
+        this.postLogLength = postLogLength;
+        this.changeLog = changeLog;
+        this.changeSequences = changeSequences;
+        this.changeLogLength = changeLogLength;
+        this.size = size;
+        this.generation = generation;
+        this.lastSequence = lastSequence;
+        this.usage = usage;
+    }
+
+    /**
+     * Creates an empty snapshot reporting the given buffer limits.
+     */
+    NotificationsSnapshot(Usage usage) {
+        this(new StoreEntry[0], 0, new StoreEntry[0], new long[0], 0, 0, 0, 0, usage);
+    }
+
+    public Usage getUsage() {
+        return usage;
+    }
+
+    /**
+     * Writes the JSON object describing the buffer limits and their utilization.
+     *
+     * @param writer the writer to write the object to
+     */
+    public void writeUsage(JsonResponseWriter writer) {
+        writer.beginObject()
+                .name("capacity").value(usage.getCapacity())
+                .name("size").value(size())
+                .name("maxBytes").value(usage.getMaxBytes())
+                .name("retainedBytes").value(usage.getRetainedBytes())
+                .name("evicted").value(usage.getEvictedCount())
+                .name("evictionPolicy").value(usage.getEvictionPolicy().getName())
+                .endObject();
+    }
+
+    /**
+     * @return the sequence number of the most recent change in the buffer
+     * or zero if nothing has been changed yet
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return the value, which changes whenever the buffer content or its limits change
+     */
+    public String getVersion() {
+        return String.format(Locale.ROOT, "%d.%d.%d.%d.%s", lastSequence, usage.getCapacity(),
+                usage.getMaxBytes(), usage.getEvictedCount(), usage.getEvictionPolicy().getName());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the list of stored notifications. The most recently posted item goes first.
+     */
+    public List<StoredNotification> toList() {
+        List<StoredNotification> result = items;
+        if (result == null) {
+            List<StoredNotification> list = new ArrayList<>(size);
+            for (int i = postLogLength - 1; i >= 0 && list.size() < size; i--) {
+                StoredNotification item = postLog[i].getAt(generation);
+                if (item != null) {
+                    list.add(item);
+                }
+            }
+            result = Collections.unmodifiableList(list);
+            items = result;
+        }
+        return result;
+    }
+
+    /**
+     * @param since the sequence number to start from (exclusive)
+     * @return the list of items posted or marked as removed after the given sequence number.
+     * The most recently changed item goes first.
+     */
+    public List<StoredNotification> getChangedSince(long since) {
+        List<StoredNotification> result = new ArrayList<>();
+        for (int i = changeLogLength - 1; i >= 0 && changeSequences[i] > since; i--) {
+            StoredNotification item = changeLog[i].getAt(generation);
+            // Skip evicted items and changes superseded by a later one
+            if (item != null && item.getSequence() == changeSequences[i]) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    @Nullable
+    public StoredNotification get(String key) {
+        Map<String, StoredNotification> index = keyIndex;
+        if (index == null) {
+            index = new HashMap<>(Math.max(16, size * 4 / 3 + 1));
+            for (StoredNotification item : toList()) {
+                index.put(item.getKey(), item);
+            }
+            keyIndex = index;
+        }
+        return index.get(key);
+    }
+}
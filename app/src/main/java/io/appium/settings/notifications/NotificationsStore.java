@@ -0,0 +1,419 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.notifications;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Notifications buffer limited by the count of items and optionally by their estimated
+ * memory footprint.
+ * Items live in a preallocated array of slots, which are ordered by their arrival time.
+ * Notifications marked as removed are additionally tracked in a separate list,
+ * so they could be evicted first without scanning the whole buffer.
+ * Each change of an item is stamped with a monotonically increasing sequence number,
+ * which allows to only retrieve items that have been changed since the given point.
+ * Stored items are also appended to the post log, whose entries remember when they have been
+ * marked as removed or released, and each change is appended to the change log, which is
+ * ordered by sequence numbers. Writers are serialized and publish a new immutable snapshot
+ * after each change. The snapshot only references the log and its current length, so
+ * publishing stays O(1) amortized regardless of the buffer size. Readers never lock the store.
+ */
+public class NotificationsStore {
+    public static final int DEFAULT_CAPACITY = 100;
+    // Bounds the memory preallocated for slots
+    public static final int MAX_CAPACITY = 100000;
+    private static final int MIN_LOG_LENGTH = 16;
+    private static final Comparator<StoreEntry> BY_SEQUENCE = new Comparator<StoreEntry>() {
+        @Override
+        public int compare(StoreEntry o1, StoreEntry o2) {
+            long s1 = o1.getCurrent().getSequence();
+            long s2 = o2.getCurrent().getSequence();
+            return s1 == s2 ? 0 : (s1 < s2 ? -1 : 1);
+        }
+    };
+
+    private StoreEntry[] slots;
+    // Occupied slots, the most recently posted item goes first
+    private SlotList postOrder;
+    // Slots of items marked as removed, the most recently removed item goes first
+    private SlotList removedOrder;
+    private int[] freeSlots;
+    private int freeSlotsCount;
+    private final Map<String, Integer> keyIndex = new HashMap<>();
+    private long maxBytes = 0;
+    private long retainedBytes = 0;
+    private long evictedCount = 0;
+    private EvictionPolicy evictionPolicy = EvictionPolicy.REMOVED_FIRST;
+    private long lastSequence = 0;
+    // Entries in the order they have been posted, the most recently posted item goes last.
+    // Published snapshots read the log up to the length they have been published with,
+    // so only entries beyond that length might be written.
+    private StoreEntry[] postLog = new StoreEntry[MIN_LOG_LENGTH];
+    private int postLogLength = 0;
+    // Changed entries and the sequence numbers of their changes, the most recent change goes last.
+    // Published the same way as the post log.
+    private StoreEntry[] changeLog = new StoreEntry[MIN_LOG_LENGTH];
+    private long[] changeSequences = new long[MIN_LOG_LENGTH];
+    private int changeLogLength = 0;
+    // The generation of the published snapshot. Changes made since then are stamped
+    // with the next generation.
+    private long generation = 0;
+    private volatile NotificationsSnapshot snapshot = NotificationsSnapshot.EMPTY;
+
+    public NotificationsStore() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        slots = new StoreEntry[capacity];
+        postOrder = new SlotList(capacity);
+        removedOrder = new SlotList(capacity);
+        freeSlots = new int[capacity];
+        resetFreeSlots();
+    }
+
+    private void resetFreeSlots() {
+        for (int i = 0; i < slots.length; i++) {
+            // Make sure lower slots are taken first
+            freeSlots[i] = slots.length - 1 - i;
+        }
+        freeSlotsCount = slots.length;
+    }
+
+    public int getCapacity() {
+        return snapshot.getUsage().getCapacity();
+    }
+
+    /**
+     * @return the count of stored items
+     */
+    public int size() {
+        return snapshot.size();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the given buffer limits are out of range
+     */
+    public static void validateLimits(int capacity, long maxBytes) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException(
+                    String.format("The buffer capacity must be in range 1..%s. %s is given instead",
+                            MAX_CAPACITY, capacity));
+        }
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException(
+                    String.format("The maximum buffer size must not be negative. %s is given instead", maxBytes));
+        }
+    }
+
+    /**
+     * Changes the buffer limits. Items exceeding the new limits are evicted
+     * according to the given policy.
+     *
+     * @param capacity the maximum count of items in the buffer
+     * @param maxBytes the maximum estimated size of items in the buffer in bytes. Zero means no limit.
+     * @param evictionPolicy the policy to select items to evict
+     * @throws IllegalArgumentException if the given buffer limits are out of range
+     */
+    public synchronized void configure(int capacity, long maxBytes, EvictionPolicy evictionPolicy) {
+        validateLimits(capacity, maxBytes);
+        this.maxBytes = maxBytes;
+        this.evictionPolicy = evictionPolicy;
+        while (!postOrder.isEmpty() && (postOrder.size() > capacity || isOverBudget(0))) {
+            evict();
+        }
+        if (capacity != slots.length) {
+            reallocate(capacity);
+        }
+        publish();
+    }
+
+    /**
+     * Moves the stored items to newly allocated slots keeping all their orders.
+     */
+    private void reallocate(int capacity) {
+        StoreEntry[] oldSlots = slots;
+        SlotList oldPostOrder = postOrder;
+        SlotList oldRemovedOrder = removedOrder;
+        int[] slotsMapping = new int[oldSlots.length];
+        allocate(capacity);
+        keyIndex.clear();
+        for (int oldSlot = oldPostOrder.last(); oldSlot != SlotList.NONE; oldSlot = oldPostOrder.previous(oldSlot)) {
+            int slot = freeSlots[--freeSlotsCount];
+            slots[slot] = oldSlots[oldSlot];
+            slotsMapping[oldSlot] = slot;
+            postOrder.addFirst(slot);
+            keyIndex.put(slots[slot].getCurrent().getKey(), slot);
+        }
+        for (int oldSlot = oldRemovedOrder.last(); oldSlot != SlotList.NONE;
+             oldSlot = oldRemovedOrder.previous(oldSlot)) {
+            removedOrder.addFirst(slotsMapping[oldSlot]);
+        }
+    }
+
+    /**
+     * @return the current content of the buffer. The call never blocks.
+     */
+    public NotificationsSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Publishes the snapshot, which sees all the changes made since the previous one.
+     */
+    private void publish() {
+        generation++;
+        snapshot = new NotificationsSnapshot(postLog, postLogLength, changeLog, changeSequences,
+                changeLogLength, postOrder.size(), generation, lastSequence,
+                new NotificationsSnapshot.Usage(slots.length, maxBytes, retainedBytes, evictedCount,
+                        evictionPolicy));
+    }
+
+    private void appendToPostLog(StoreEntry entry) {
+        if (postLogLength == postLog.length) {
+            // Published snapshots still read the full log, so released entries are only
+            // dropped from its copy. Each copy at least doubles the free space left for new
+            // entries, which keeps appending O(1) amortized.
+            StoreEntry[] log = new StoreEntry[2 * postOrder.size() + MIN_LOG_LENGTH];
+            int length = 0;
+            for (int i = 0; i < postLogLength; i++) {
+                if (!postLog[i].isReleased()) {
+                    log[length++] = postLog[i];
+                }
+            }
+            postLog = log;
+            postLogLength = length;
+        }
+        postLog[postLogLength++] = entry;
+    }
+
+    private void appendToChangeLog(StoreEntry entry, long sequence) {
+        if (changeLogLength == changeLog.length) {
+            // Only the most recent change of each stored item is kept in the copy
+            int capacity = 2 * postOrder.size() + MIN_LOG_LENGTH;
+            StoreEntry[] log = new StoreEntry[capacity];
+            long[] sequences = new long[capacity];
+            int length = 0;
+            for (int i = 0; i < changeLogLength; i++) {
+                if (!changeLog[i].isReleased() && changeLog[i].getCurrent().getSequence() == changeSequences[i]) {
+                    log[length] = changeLog[i];
+                    sequences[length++] = changeSequences[i];
+                }
+            }
+            changeLog = log;
+            changeSequences = sequences;
+            changeLogLength = length;
+        }
+        changeLog[changeLogLength] = entry;
+        changeSequences[changeLogLength++] = sequence;
+    }
+
+    private boolean isOverBudget(int extraBytes) {
+        return maxBytes > 0 && retainedBytes + extraBytes > maxBytes;
+    }
+
+    /**
+     * Puts the given notification to the head of the buffer.
+     * If an item with the same key is already stored then it gets replaced by the given one,
+     * which inherits its incremented update counter.
+     * Items are evicted according to the eviction policy until the buffer has a free slot
+     * and enough memory budget for the new item. The new item is stored even if it alone
+     * exceeds the memory budget.
+     *
+     * @param notification the notification to store
+     * @return the count of evicted items
+     */
+    public synchronized int add(StoredNotification notification) {
+        int evicted = put(notification);
+        publish();
+        return evicted;
+    }
+
+    private int put(StoredNotification notification) {
+        Integer existingSlot = keyIndex.get(notification.getKey());
+        if (existingSlot != null) {
+            // This is an update of an already stored notification, so replace it
+            notification.setUpdateCount(slots[existingSlot].getCurrent().getUpdateCount() + 1);
+            release(existingSlot);
+        }
+        notification.setSequence(++lastSequence);
+        long evictedBefore = evictedCount;
+        int slot = insert(notification);
+        appendToChangeLog(slots[slot], notification.getSequence());
+        return (int) (evictedCount - evictedBefore);
+    }
+
+    /**
+     * Puts the given notification to the head of the post order without assigning a sequence number.
+     *
+     * @return the slot of the inserted item
+     */
+    private int insert(StoredNotification notification) {
+        int itemSize = notification.getRetainedSize();
+        while (freeSlotsCount == 0 || (!postOrder.isEmpty() && isOverBudget(itemSize))) {
+            evict();
+        }
+        int slot = freeSlots[--freeSlotsCount];
+        StoreEntry entry = new StoreEntry(notification);
+        slots[slot] = entry;
+        appendToPostLog(entry);
+        retainedBytes += itemSize;
+        postOrder.addFirst(slot);
+        if (notification.isRemoved()) {
+            removedOrder.addFirst(slot);
+        }
+        keyIndex.put(notification.getKey(), slot);
+        return slot;
+    }
+
+    private void evict() {
+        int slot = evictionPolicy == EvictionPolicy.REMOVED_FIRST && !removedOrder.isEmpty()
+                ? removedOrder.last()
+                : postOrder.last();
+        release(slot);
+        evictedCount++;
+    }
+
+    private void release(int slot) {
+        StoredNotification item = slots[slot].getCurrent();
+        Integer indexedSlot = keyIndex.get(item.getKey());
+        if (indexedSlot != null && indexedSlot == slot) {
+            keyIndex.remove(item.getKey());
+        }
+        retainedBytes -= item.getRetainedSize();
+        postOrder.remove(slot);
+        removedOrder.remove(slot);
+        slots[slot].release(generation + 1);
+        slots[slot] = null;
+        freeSlots[freeSlotsCount++] = slot;
+    }
+
+    /**
+     * Marks the notification with the given key as removed.
+     * Items are evicted according to the eviction policy if the changed item
+     * does not fit into the memory budget anymore.
+     *
+     * @param key the notification key
+     * @return the affected item or null if no notification with the given key is stored
+     */
+    @Nullable
+    public synchronized StoredNotification markRemoved(String key) {
+        Integer slot = keyIndex.get(key);
+        if (slot == null) {
+            return null;
+        }
+        StoredNotification item = slots[slot].getCurrent();
+        if (item.isRemoved()) {
+            return item;
+        }
+        StoredNotification removed = item.toRemoved(++lastSequence);
+        retainedBytes += removed.getRetainedSize() - item.getRetainedSize();
+        slots[slot].markRemoved(removed, generation + 1);
+        appendToChangeLog(slots[slot], removed.getSequence());
+        removedOrder.addFirst(slot);
+        while (!postOrder.isEmpty() && isOverBudget(0)) {
+            evict();
+        }
+        publish();
+        return removed;
+    }
+
+    public synchronized void clear() {
+        reset();
+        publish();
+    }
+
+    /**
+     * Puts the given notifications to the head of the buffer at once.
+     *
+     * @param notifications the items to store. The most recently posted item goes first.
+     * @return the count of evicted items
+     */
+    public synchronized int addAll(List<StoredNotification> notifications) {
+        int evicted = 0;
+        for (int i = notifications.size() - 1; i >= 0; i--) {
+            evicted += put(notifications.get(i));
+        }
+        publish();
+        return evicted;
+    }
+
+    /**
+     * Puts the given previously stored notifications under the currently stored ones.
+     * Items having the same keys as the currently stored ones are skipped.
+     * Restored items keep their sequence numbers, while the currently stored ones get new
+     * sequence numbers following the most recent of them, so the sequence never goes back.
+     *
+     * @param notifications the items to restore. The most recently posted item goes first.
+     */
+    public synchronized void restore(List<StoredNotification> notifications) {
+        List<StoredNotification> current = getSnapshot().toList();
+        Set<String> currentKeys = new HashSet<>();
+        for (StoredNotification item : current) {
+            currentKeys.add(item.getKey());
+        }
+        reset();
+        for (int i = notifications.size() - 1; i >= 0; i--) {
+            StoredNotification item = notifications.get(i);
+            if (!currentKeys.contains(item.getKey())) {
+                insert(item);
+                lastSequence = Math.max(lastSequence, item.getSequence());
+            }
+        }
+        // Removed items are changed after they have been posted, so the post order
+        // does not match the order of changes
+        List<StoreEntry> changed = new ArrayList<>(postOrder.size());
+        for (int slot = postOrder.last(); slot != SlotList.NONE; slot = postOrder.previous(slot)) {
+            changed.add(slots[slot]);
+        }
+        Collections.sort(changed, BY_SEQUENCE);
+        for (StoreEntry entry : changed) {
+            appendToChangeLog(entry, entry.getCurrent().getSequence());
+        }
+        for (int i = current.size() - 1; i >= 0; i--) {
+            // Published items must not be modified, since readers might still access them
+            put(current.get(i).copy());
+        }
+        publish();
+    }
+
+    private void reset() {
+        for (int slot = postOrder.first(); slot != SlotList.NONE; slot = postOrder.next(slot)) {
+            slots[slot] = null;
+        }
+        postOrder.clear();
+        removedOrder.clear();
+        keyIndex.clear();
+        retainedBytes = 0;
+        resetFreeSlots();
+        // Published snapshots keep reading the previous log
+        postLog = new StoreEntry[MIN_LOG_LENGTH];
+        postLogLength = 0;
+        changeLog = new StoreEntry[MIN_LOG_LENGTH];
+        changeSequences = new long[MIN_LOG_LENGTH];
+        changeLogLength = 0;
+    }
+}
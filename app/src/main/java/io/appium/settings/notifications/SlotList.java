@@ -0,0 +1,109 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.notifications;
+
+import java.util.Arrays;
+
+/**
+ * Doubly-linked list of slot indexes backed by preallocated arrays.
+ * All operations, including removal of an arbitrary slot, take constant time.
+ */
+class SlotList {
+    static final int NONE = -1;
+
+    private final int[] prev;
+    private final int[] next;
+    private final boolean[] linked;
+    private int head = NONE;
+    private int tail = NONE;
+    private int size = 0;
+
+    SlotList(int capacity) {
+        prev = new int[capacity];
+        next = new int[capacity];
+        linked = new boolean[capacity];
+    }
+
+    void addFirst(int slot) {
+        if (linked[slot]) {
+            remove(slot);
+        }
+        prev[slot] = NONE;
+        next[slot] = head;
+        if (head == NONE) {
+            tail = slot;
+        } else {
+            prev[head] = slot;
+        }
+        head = slot;
+        linked[slot] = true;
+        size++;
+    }
+
+    void remove(int slot) {
+        if (!linked[slot]) {
+            return;
+        }
+        if (prev[slot] == NONE) {
+            head = next[slot];
+        } else {
+            next[prev[slot]] = next[slot];
+        }
+        if (next[slot] == NONE) {
+            tail = prev[slot];
+        } else {
+            prev[next[slot]] = prev[slot];
+        }
+        linked[slot] = false;
+        size--;
+    }
+
+    boolean contains(int slot) {
+        return linked[slot];
+    }
+
+    int first() {
+        return head;
+    }
+
+    int last() {
+        return tail;
+    }
+
+    int next(int slot) {
+        return next[slot];
+    }
+
+    int previous(int slot) {
+        return prev[slot];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        Arrays.fill(linked, false);
+        head = NONE;
+        tail = NONE;
+        size = 0;
+    }
+}
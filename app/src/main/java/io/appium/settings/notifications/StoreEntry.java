@@ -0,0 +1,72 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.notifications;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Stored item together with the history of its state changes.
+ * Changes are stamped with the generation of the snapshot, which is the first one to see them,
+ * so readers of older snapshots keep seeing the state they were published with.
+ * Only the store changes entries and only while holding its lock.
+ */
+class StoreEntry {
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private final StoredNotification posted;
+    // Written before the generation, so it is visible to readers having seen the generation
+    private StoredNotification removed = null;
+    private volatile long removedGeneration = NEVER;
+    private volatile long releasedGeneration = NEVER;
+
+    StoreEntry(StoredNotification posted) {
+        this.posted = posted;
+    }
+
+    /**
+     * @param generation the snapshot generation
+     * @return the item as seen by the snapshot of the given generation or null
+     * if the item is not stored in it
+     */
+    @Nullable
+    StoredNotification getAt(long generation) {
+        if (releasedGeneration <= generation) {
+            return null;
+        }
+        return removedGeneration <= generation ? removed : posted;
+    }
+
+    /**
+     * @return the most recent state of the item
+     */
+    StoredNotification getCurrent() {
+        return removed == null ? posted : removed;
+    }
+
+    boolean isReleased() {
+        return releasedGeneration != NEVER;
+    }
+
+    void markRemoved(StoredNotification item, long generation) {
+        removed = item;
+        removedGeneration = generation;
+    }
+
+    void release(long generation) {
+        releasedGeneration = generation;
+    }
+}
@@ -19,85 +19,512 @@ package io.appium.settings.notifications;
 import android.os.Build;
 import android.os.Bundle;
 import android.service.notification.StatusBarNotification;
-import org.json.JSONException;
-import org.json.JSONObject;
+import android.support.annotation.Nullable;
+import io.appium.settings.helpers.JsonResponseWriter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
-import static io.appium.settings.helpers.Utils.formatJsonNull;
 import static io.appium.settings.helpers.Utils.toNullableString;
 
+/**
+ * Buffered notification. Only the properties exposed to clients are extracted
+ * from the original StatusBarNotification, so its extras, icons, remote views and
+ * pending intents are not retained.
+ * The notification properties are immutable. The sequence number, the update counter
+ * and the cached JSON depending on them are only assigned by the notifications store
+ * under its lock while it puts the item, i.e. before any snapshot containing the item
+ * is built. Other threads only get the item after the store has released its lock, either from
+ * a snapshot published via a volatile field or from the listener service after the item is stored,
+ * so they always observe the final values and instances can be shared between threads.
+ * A new instance is created instead once the notification is marked as removed.
+ */
 public class StoredNotification {
-    private final StatusBarNotification sbn;
-    private boolean isRemoved = false;
-
-    public StoredNotification(StatusBarNotification sbn) {
-        this.sbn = sbn;
-    }
+    // Rough estimations of the object header and fields
+    private static final int OBJECT_SIZE_BYTES = 160;
+    private static final int STRING_OVERHEAD_BYTES = 40;
+    // Protects from huge allocations while reading corrupted records
+    private static final int MAX_STRING_BYTES = 1024 * 1024;
+    public static final String[] TABLE_COLUMNS = new String[]{
+            "packageName", "id", "tag", "postTime", "isClearable", "isOngoing",
+            "title", "bigTitle", "text", "bigText", "tickerText", "subText", "infoText", "template",
+            "isGroup", "userHandle", "groupKey", "overrideGroupKey", "key",
+            "isRemoved", "sequence", "updateCount"
+    };
 
-    public StatusBarNotification getNotification() {
-        return sbn;
-    }
+    private final String key;
+    private final String packageName;
+    private final boolean isClearable;
+    private final boolean isOngoing;
+    private final int id;
+    private final String tag;
+    private final long postTime;
+    private final boolean hasContent;
+    private final String title;
+    private final String bigTitle;
+    private final String text;
+    private final String bigText;
+    private final String tickerText;
+    private final String subText;
+    private final String infoText;
+    private final String template;
+    private final boolean isGroup;
+    private final int userHandle;
+    private final String groupKey;
+    private final String overrideGroupKey;
+    private final String systemKey;
+    // The length of serialized immutable properties at the beginning of the cached JSON
+    private final int jsonPrefixLength;
+    private final boolean isRemoved;
+    // Only assigned by the store before the item becomes visible to readers
+    private long sequence = 0;
+    private int updateCount = 0;
+    private String cachedJson;
+    // The estimated amount of memory retained by this item except of its cached JSON
+    private final int baseSize;
 
-    private void storeCharSequenceProperty(JSONObject dst, String name, String propertyName,
-                                           Bundle extras) throws JSONException {
-        CharSequence value = extras.getCharSequence(propertyName);
-        dst.put(name, formatJsonNull(toNullableString(value)));
-    }
-
-    public JSONObject toJson() throws JSONException {
-        JSONObject result = new JSONObject();
-        result.put("packageName", formatJsonNull(sbn.getPackageName()));
-        result.put("isClearable", sbn.isClearable());
-        result.put("isOngoing", sbn.isOngoing());
-        result.put("id", sbn.getId());
-        result.put("tag", formatJsonNull(sbn.getTag()));
-        result.put("postTime", sbn.getPostTime());
-        result.put("isRemoved", isRemoved());
+    public StoredNotification(StatusBarNotification sbn) {
+        this.key = getKey(sbn);
+        this.packageName = sbn.getPackageName();
+        this.isClearable = sbn.isClearable();
+        this.isOngoing = sbn.isOngoing();
+        this.id = sbn.getId();
+        this.tag = sbn.getTag();
+        this.postTime = sbn.getPostTime();
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            JSONObject notification = new JSONObject();
             Bundle extras = sbn.getNotification().extras;
-            storeCharSequenceProperty(notification, "title", "android.title", extras);
-            storeCharSequenceProperty(notification, "bigTitle", "android.title.big", extras);
-            storeCharSequenceProperty(notification, "text", "android.text", extras);
-            storeCharSequenceProperty(notification, "bigText", "android.bigText", extras);
-            storeCharSequenceProperty(notification, "tickerText", "android.tickerText", extras);
-            storeCharSequenceProperty(notification, "subText", "android.subText", extras);
-            storeCharSequenceProperty(notification, "infoText", "android.infoText", extras);
-            storeCharSequenceProperty(notification, "template", "android.template", extras);
-            result.put("notification", notification);
-        } else {
-            result.put("notification", JSONObject.NULL);
-        }
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            result.put("isGroup", sbn.isGroup());
+            this.hasContent = true;
+            this.title = getStringExtra(extras, "android.title");
+            this.bigTitle = getStringExtra(extras, "android.title.big");
+            this.text = getStringExtra(extras, "android.text");
+            this.bigText = getStringExtra(extras, "android.bigText");
+            this.tickerText = getStringExtra(extras, "android.tickerText");
+            this.subText = getStringExtra(extras, "android.subText");
+            this.infoText = getStringExtra(extras, "android.infoText");
+            this.template = getStringExtra(extras, "android.template");
         } else {
-            result.put("isGroup", false);
+            this.hasContent = false;
+            this.title = null;
+            this.bigTitle = null;
+            this.text = null;
+            this.bigText = null;
+            this.tickerText = null;
+            this.subText = null;
+            this.infoText = null;
+            this.template = null;
         }
+        this.isGroup = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && sbn.isGroup();
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            result.put("userHandle", sbn.getUser().hashCode());
-            result.put("groupKey", formatJsonNull(sbn.getGroupKey()));
+            this.userHandle = sbn.getUser().hashCode();
+            this.groupKey = sbn.getGroupKey();
         } else {
             //noinspection deprecation
-            result.put("userHandle", sbn.getUserId());
-            result.put("groupKey", JSONObject.NULL);
+            this.userHandle = sbn.getUserId();
+            this.groupKey = null;
         }
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            result.put("overrideGroupKey", formatJsonNull(sbn.getOverrideGroupKey()));
-        } else {
-            result.put("overrideGroupKey", JSONObject.NULL);
+        this.overrideGroupKey = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                ? sbn.getOverrideGroupKey()
+                : null;
+        this.systemKey = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT_WATCH
+                ? sbn.getKey()
+                : null;
+        this.isRemoved = false;
+        String jsonPrefix = buildJsonPrefix();
+        this.jsonPrefixLength = jsonPrefix.length();
+        this.baseSize = estimateBaseSize();
+        updateCachedJson(jsonPrefix);
+    }
+
+    /**
+     * Restores the notification written by {@link #writeTo(DataOutput)}.
+     * The sequence number is not a part of the written properties, since the journal keeps it
+     * in its records.
+     */
+    private StoredNotification(DataInput input) throws IOException {
+        this.key = readString(input);
+        this.packageName = readString(input);
+        this.isClearable = input.readBoolean();
+        this.isOngoing = input.readBoolean();
+        this.id = input.readInt();
+        this.tag = readString(input);
+        this.postTime = input.readLong();
+        this.hasContent = input.readBoolean();
+        this.title = readString(input);
+        this.bigTitle = readString(input);
+        this.text = readString(input);
+        this.bigText = readString(input);
+        this.tickerText = readString(input);
+        this.subText = readString(input);
+        this.infoText = readString(input);
+        this.template = readString(input);
+        this.isGroup = input.readBoolean();
+        this.userHandle = input.readInt();
+        this.groupKey = readString(input);
+        this.overrideGroupKey = readString(input);
+        this.systemKey = readString(input);
+        this.isRemoved = input.readBoolean();
+        this.updateCount = input.readInt();
+        if (key == null || packageName == null) {
+            throw new IOException("The notification record is corrupted");
         }
+        String jsonPrefix = buildJsonPrefix();
+        this.jsonPrefixLength = jsonPrefix.length();
+        this.baseSize = estimateBaseSize();
+        updateCachedJson(jsonPrefix);
+    }
+
+    private StoredNotification(StoredNotification other, boolean isRemoved, long sequence) {
+        this.key = other.key;
+        this.packageName = other.packageName;
+        this.isClearable = other.isClearable;
+        this.isOngoing = other.isOngoing;
+        this.id = other.id;
+        this.tag = other.tag;
+        this.postTime = other.postTime;
+        this.hasContent = other.hasContent;
+        this.title = other.title;
+        this.bigTitle = other.bigTitle;
+        this.text = other.text;
+        this.bigText = other.bigText;
+        this.tickerText = other.tickerText;
+        this.subText = other.subText;
+        this.infoText = other.infoText;
+        this.template = other.template;
+        this.isGroup = other.isGroup;
+        this.userHandle = other.userHandle;
+        this.groupKey = other.groupKey;
+        this.overrideGroupKey = other.overrideGroupKey;
+        this.systemKey = other.systemKey;
+        this.jsonPrefixLength = other.jsonPrefixLength;
+        this.isRemoved = isRemoved;
+        this.sequence = sequence;
+        this.updateCount = other.updateCount;
+        this.baseSize = other.baseSize;
+        updateCachedJson(other.cachedJson);
+    }
+
+    private int estimateBaseSize() {
+        return OBJECT_SIZE_BYTES + getStringSize(key) + getStringSize(packageName)
+                + getStringSize(tag) + getStringSize(title) + getStringSize(bigTitle)
+                + getStringSize(text) + getStringSize(bigText) + getStringSize(tickerText)
+                + getStringSize(subText) + getStringSize(infoText) + getStringSize(template)
+                + getStringSize(groupKey) + getStringSize(overrideGroupKey);
+    }
+
+    private static int getStringSize(@Nullable String value) {
+        return value == null ? 0 : STRING_OVERHEAD_BYTES + 2 * value.length();
+    }
+
+    @Nullable
+    private static String getStringExtra(Bundle extras, String name) {
+        return toNullableString(extras.getCharSequence(name));
+    }
+
+    /**
+     * @param sbn status bar notification
+     * @return the unique key of the given notification. The key format mimics the one
+     * returned by StatusBarNotification.getKey() on older API levels where this method is not available.
+     */
+    public static String getKey(StatusBarNotification sbn) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT_WATCH) {
-            result.put("key", formatJsonNull(sbn.getKey()));
+            return sbn.getKey();
+        }
+        //noinspection deprecation
+        return String.format("%s|%s|%s|%s", sbn.getUserId(), sbn.getPackageName(), sbn.getId(), sbn.getTag());
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public long getPostTime() {
+        return postTime;
+    }
+
+    @Nullable
+    public String getTitle() {
+        return title;
+    }
+
+    @Nullable
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return values of {@link #TABLE_COLUMNS} describing this notification. Booleans are represented as 0 or 1.
+     */
+    public Object[] toTableRow() {
+        return new Object[]{
+                packageName, id, tag, postTime, isClearable ? 1 : 0, isOngoing ? 1 : 0,
+                title, bigTitle, text, bigText, tickerText, subText, infoText, template,
+                isGroup ? 1 : 0, userHandle, groupKey, overrideGroupKey, systemKey,
+                isRemoved ? 1 : 0, sequence, updateCount
+        };
+    }
+
+    /**
+     * Mutable properties are not included, since they are appended to the
+     * cached JSON representation separately. The object is left open.
+     */
+    private String buildJsonPrefix() {
+        JsonResponseWriter writer = new JsonResponseWriter(512)
+                .beginObject()
+                .name("packageName").value(packageName)
+                .name("isClearable").value(isClearable)
+                .name("isOngoing").value(isOngoing)
+                .name("id").value(id)
+                .name("tag").value(tag)
+                .name("postTime").value(postTime)
+                .name("notification");
+        if (hasContent) {
+            writer.beginObject()
+                    .name("title").value(title)
+                    .name("bigTitle").value(bigTitle)
+                    .name("text").value(text)
+                    .name("bigText").value(bigText)
+                    .name("tickerText").value(tickerText)
+                    .name("subText").value(subText)
+                    .name("infoText").value(infoText)
+                    .name("template").value(template)
+                    .endObject();
         } else {
-            result.put("key", JSONObject.NULL);
+            writer.nullValue();
+        }
+        return writer
+                .name("isGroup").value(isGroup)
+                .name("userHandle").value(userHandle)
+                .name("groupKey").value(groupKey)
+                .name("overrideGroupKey").value(overrideGroupKey)
+                .name("key").value(systemKey)
+                .toString();
+    }
+
+    /**
+     * @param source the string starting with serialized immutable properties of this item
+     */
+    private void updateCachedJson(String source) {
+        cachedJson = new StringBuilder(jsonPrefixLength + 64)
+                .append(source, 0, jsonPrefixLength)
+                .append(",\"isRemoved\":").append(isRemoved)
+                .append(",\"sequence\":").append(sequence)
+                .append(",\"updateCount\":").append(updateCount)
+                .append('}')
+                .toString();
+    }
+
+    private void updateCachedJson() {
+        updateCachedJson(cachedJson);
+    }
+
+    /**
+     * @return the serialized JSON object representing this notification. The value is
+     * computed once when the notification is posted and is only patched on its state changes.
+     */
+    public String toJsonString() {
+        return cachedJson;
+    }
+
+    private static void write(JsonResponseWriter writer, NotificationFields fields, String name,
+                              @Nullable String value) {
+        if (fields.includes(name)) {
+            writer.name(name).value(value);
         }
-        return result;
+    }
+
+    private static void write(JsonResponseWriter writer, NotificationFields fields, String name, long value) {
+        if (fields.includes(name)) {
+            writer.name(name).value(value);
+        }
+    }
+
+    private static void write(JsonResponseWriter writer, NotificationFields fields, String name, boolean value) {
+        if (fields.includes(name)) {
+            writer.name(name).value(value);
+        }
+    }
+
+    private static void writeContent(JsonResponseWriter writer, NotificationFields fields, String name,
+                                     @Nullable String value) {
+        if (fields.includesContent(name)) {
+            writer.name(name).value(value);
+        }
+    }
+
+    /**
+     * Writes the JSON object only containing the given properties of this notification.
+     * The cached representation is written if all properties are selected.
+     *
+     * @param writer the writer to write the object to
+     * @param fields the properties to include
+     */
+    public void writeTo(JsonResponseWriter writer, NotificationFields fields) {
+        if (fields.isAll()) {
+            writer.rawValue(cachedJson);
+            return;
+        }
+        writer.beginObject();
+        write(writer, fields, "packageName", packageName);
+        write(writer, fields, "isClearable", isClearable);
+        write(writer, fields, "isOngoing", isOngoing);
+        write(writer, fields, "id", id);
+        write(writer, fields, "tag", tag);
+        write(writer, fields, "postTime", postTime);
+        if (fields.includes("notification")) {
+            writer.name("notification");
+            if (hasContent) {
+                writer.beginObject();
+                writeContent(writer, fields, "title", title);
+                writeContent(writer, fields, "bigTitle", bigTitle);
+                writeContent(writer, fields, "text", text);
+                writeContent(writer, fields, "bigText", bigText);
+                writeContent(writer, fields, "tickerText", tickerText);
+                writeContent(writer, fields, "subText", subText);
+                writeContent(writer, fields, "infoText", infoText);
+                writeContent(writer, fields, "template", template);
+                writer.endObject();
+            } else {
+                writer.nullValue();
+            }
+        }
+        write(writer, fields, "isGroup", isGroup);
+        write(writer, fields, "userHandle", userHandle);
+        write(writer, fields, "groupKey", groupKey);
+        write(writer, fields, "overrideGroupKey", overrideGroupKey);
+        write(writer, fields, "key", systemKey);
+        write(writer, fields, "isRemoved", isRemoved);
+        write(writer, fields, "sequence", sequence);
+        write(writer, fields, "updateCount", updateCount);
+        writer.endObject();
     }
 
     public boolean isRemoved() {
         return isRemoved;
     }
 
-    public void setRemoved(boolean removed) {
-        this.isRemoved = removed;
+    /**
+     * @return the estimated amount of heap memory retained by this item in bytes
+     */
+    public int getRetainedSize() {
+        return baseSize + getStringSize(cachedJson);
+    }
+
+    /**
+     * @param sequence the sequence number of the removal
+     * @return a copy of this item marked as removed
+     */
+    StoredNotification toRemoved(long sequence) {
+        return new StoredNotification(this, true, sequence);
+    }
+
+    /**
+     * @return a copy of this item, which could be put to the store again
+     */
+    StoredNotification copy() {
+        return new StoredNotification(this, isRemoved, sequence);
+    }
+
+    private static void writeString(DataOutput output, @Nullable String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            // writeUTF is limited to 64KB, which is not enough for big texts.
+            // StandardCharsets requires API 19, while API 18 is still supported.
+            //noinspection CharsetObjectCanBeUsed
+            byte[] bytes = value.getBytes("UTF-8");
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    @Nullable
+    private static String readString(DataInput input) throws IOException {
+        if (!input.readBoolean()) {
+            return null;
+        }
+        int length = input.readInt();
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IOException(String.format("The string length %s is out of range", length));
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Writes the properties needed to restore this notification with {@link #readFrom(DataInput)}.
+     *
+     * @param output the output to write to
+     * @throws IOException if the output cannot be written
+     */
+    void writeTo(DataOutput output) throws IOException {
+        writeString(output, key);
+        writeString(output, packageName);
+        output.writeBoolean(isClearable);
+        output.writeBoolean(isOngoing);
+        output.writeInt(id);
+        writeString(output, tag);
+        output.writeLong(postTime);
+        output.writeBoolean(hasContent);
+        writeString(output, title);
+        writeString(output, bigTitle);
+        writeString(output, text);
+        writeString(output, bigText);
+        writeString(output, tickerText);
+        writeString(output, subText);
+        writeString(output, infoText);
+        writeString(output, template);
+        output.writeBoolean(isGroup);
+        output.writeInt(userHandle);
+        writeString(output, groupKey);
+        writeString(output, overrideGroupKey);
+        writeString(output, systemKey);
+        output.writeBoolean(isRemoved);
+        output.writeInt(updateCount);
+    }
+
+    /**
+     * @param input the input to read from
+     * @return the notification written by {@link #writeTo(DataOutput)}
+     * @throws IOException if the input cannot be read or its content is corrupted
+     */
+    static StoredNotification readFrom(DataInput input) throws IOException {
+        return new StoredNotification(input);
+    }
+
+    /**
+     * @return the sequence number of the most recent change of this item,
+     * e.g. when it has been posted or marked as removed
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Must only be called by the store under its lock before the item is visible to readers.
+     */
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+        updateCachedJson();
+    }
+
+    /**
+     * @return how many times the notification with the same key has been posted again
+     * after it first arrived
+     */
+    public int getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * Must only be called by the store under its lock before the item is visible to readers.
+     */
+    void setUpdateCount(int updateCount) {
+        this.updateCount = updateCount;
+        updateCachedJson();
     }
 }
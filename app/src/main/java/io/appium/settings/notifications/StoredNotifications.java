@@ -16,15 +16,18 @@
 
 package io.appium.settings.notifications;
 
-import org.json.JSONArray;
-import org.json.JSONException;
+import io.appium.settings.helpers.JsonResponseWriter;
 
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class StoredNotifications {
-    private List<StoredNotification> notifications = Collections.emptyList();
+    private volatile NotificationsStore notifications = null;
+    private int bufferCapacity = NotificationsStore.DEFAULT_CAPACITY;
+    private long bufferMaxBytes = 0;
+    private EvictionPolicy evictionPolicy = EvictionPolicy.REMOVED_FIRST;
+    private final List<NotificationWaiter> waiters = new CopyOnWriteArrayList<>();
 
     private StoredNotifications() {}
 
@@ -36,15 +39,147 @@ public class StoredNotifications {
         return instance;
     }
 
-    public void bindNotificationsBuffer(List<StoredNotification> notifications) {
+    public synchronized void bindNotificationsBuffer(NotificationsStore notifications) {
+        notifications.configure(bufferCapacity, bufferMaxBytes, evictionPolicy);
         this.notifications = notifications;
     }
 
-    public JSONArray getNotifications() throws JSONException {
-        JSONArray result = new JSONArray();
-        for (StoredNotification sn: new LinkedList<>(notifications)) {
-            result.put(sn.toJson());
+    /**
+     * Changes the notifications buffer limits. The values are retained if
+     * the listener service is recreated.
+     *
+     * @param capacity the maximum count of buffered items
+     * @param maxBytes the maximum estimated size of buffered items in bytes. Zero means no limit.
+     * @param evictionPolicy the policy to select items to evict
+     * @throws IllegalArgumentException if the given values are out of range
+     */
+    public synchronized void configureBuffer(int capacity, long maxBytes, EvictionPolicy evictionPolicy) {
+        NotificationsStore.validateLimits(capacity, maxBytes);
+        NotificationsStore store = notifications;
+        if (store != null) {
+            store.configure(capacity, maxBytes, evictionPolicy);
+        }
+        this.bufferCapacity = capacity;
+        this.bufferMaxBytes = maxBytes;
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    /**
+     * @return the configured maximum count of buffered items. It is retained even if
+     * the listener service is not bound.
+     */
+    public synchronized int getBufferCapacity() {
+        return bufferCapacity;
+    }
+
+    /**
+     * @return the configured maximum estimated size of buffered items in bytes. Zero means no limit.
+     */
+    public synchronized long getBufferMaxBytes() {
+        return bufferMaxBytes;
+    }
+
+    public synchronized EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * @return the current content of the notifications buffer. It is empty and reports
+     * the configured limits while the listener service is not bound.
+     */
+    public NotificationsSnapshot getSnapshot() {
+        NotificationsStore store = notifications;
+        return store == null ? getUnboundSnapshot() : store.getSnapshot();
+    }
+
+    private synchronized NotificationsSnapshot getUnboundSnapshot() {
+        return new NotificationsSnapshot(
+                new NotificationsSnapshot.Usage(bufferCapacity, bufferMaxBytes, 0, 0, evictionPolicy));
+    }
+
+    /**
+     * Writes the JSON array of notifications posted or marked as removed after the given point.
+     * Cached representations of the stored items are written as is unless only some of
+     * their properties are selected.
+     *
+     * @param writer the writer to write the array to
+     * @param snapshot the buffer content to select items from
+     * @param since the sequence number to start from (exclusive). All buffered items are
+     *              returned if it is zero or greater than the most recent sequence number,
+     *              which might happen after the listener service has been restarted.
+     * @param filter the criteria to select the items to return
+     * @param fields the properties of each item to return
+     */
+    public void writeNotifications(JsonResponseWriter writer, NotificationsSnapshot snapshot, long since,
+                                   NotificationsFilter filter, NotificationFields fields) {
+        if (since > snapshot.getLastSequence()) {
+            since = 0;
+        }
+        List<StoredNotification> items;
+        if (filter.getKey() != null) {
+            StoredNotification item = snapshot.get(filter.getKey());
+            items = item == null || item.getSequence() <= since
+                    ? Collections.<StoredNotification>emptyList()
+                    : Collections.singletonList(item);
+        } else {
+            items = since <= 0 ? snapshot.toList() : snapshot.getChangedSince(since);
+        }
+        writer.beginArray();
+        int count = 0;
+        for (StoredNotification item : items) {
+            if (filter.isLimitReached(count)) {
+                break;
+            }
+            if (!filter.matches(item)) {
+                continue;
+            }
+            item.writeTo(writer, fields);
+            count++;
+        }
+        writer.endArray();
+    }
+
+    /**
+     * Registers the given waiter, so it gets notified about newly stored notifications.
+     *
+     * @param waiter the waiter to register
+     * @param since the sequence number to start from (exclusive). Buffered items changed after this
+     *              point are offered to the waiter immediately. Zero means only new notifications
+     *              are going to be offered.
+     */
+    public void addWaiter(NotificationWaiter waiter, long since) {
+        waiters.add(waiter);
+        if (since <= 0) {
+            return;
+        }
+        NotificationsSnapshot snapshot = getSnapshot();
+        List<StoredNotification> items = since > snapshot.getLastSequence()
+                ? snapshot.toList()
+                : snapshot.getChangedSince(since);
+        // Offer older items first
+        for (int i = items.size() - 1; i >= 0; i--) {
+            if (waiter.offer(items.get(i))) {
+                waiters.remove(waiter);
+                return;
+            }
+        }
+    }
+
+    public void removeWaiter(NotificationWaiter waiter) {
+        waiters.remove(waiter);
+    }
+
+    /**
+     * Offers the newly stored notification to all registered waiters.
+     * Waiters that are done are unregistered.
+     *
+     * @param item the newly stored notification
+     */
+    public void notifyStored(StoredNotification item) {
+        for (NotificationWaiter waiter : waiters) {
+            if (waiter.offer(item)) {
+                waiters.remove(waiter);
+            }
         }
-        return result;
     }
 }
@@ -25,6 +25,8 @@ import android.content.Intent;
 import android.util.Base64;
 import android.util.Log;
 
+import io.appium.settings.helpers.ResultCompression;
+
 import java.io.UnsupportedEncodingException;
 
 public class ClipboardReceiver extends BroadcastReceiver implements HasAction {
@@ -55,12 +57,22 @@ public class ClipboardReceiver extends BroadcastReceiver implements HasAction {
 
     /**
      * Responds to broadcast requests like
-     * am broadcast -a io.appium.settings.clipboard.get
+     * am broadcast -a io.appium.settings.clipboard.get [--es compress gzip]
      * with the base64-encoded current clipboard text content
-     * or an empty string if no content has been received
+     * or an empty string if no content has been received.
+     * The text is gzipped before it gets base64-encoded if the compression is requested.
      */
     @Override
     public void onReceive(Context context, Intent intent) {
+        boolean isCompressionRequested;
+        try {
+            isCompressionRequested = ResultCompression.isRequested(intent);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, e.getMessage());
+            setResultCode(Activity.RESULT_CANCELED);
+            setResultData("");
+            return;
+        }
         Log.d(TAG, "Getting current clipboard content");
         final String clipboardContent = getClipboardText(context);
         if (clipboardContent == null) {
@@ -73,8 +85,12 @@ public class ClipboardReceiver extends BroadcastReceiver implements HasAction {
             // TODO: Use StandardCharsets.UTF_8 after the minimum supported API version
             // TODO: is bumped above 18
             //noinspection CharsetObjectCanBeUsed
-            String clipboardContentBase64 = Base64.encodeToString(
-                    clipboardContent.getBytes("UTF-8"), Base64.DEFAULT);
+            byte[] clipboardContentBytes = clipboardContent.getBytes("UTF-8");
+            if (isCompressionRequested) {
+                ResultCompression.setResult(this, Activity.RESULT_OK, clipboardContentBytes);
+                return;
+            }
+            String clipboardContentBase64 = Base64.encodeToString(clipboardContentBytes, Base64.DEFAULT);
             setResultCode(Activity.RESULT_OK);
             setResultData(clipboardContentBase64);
         } catch (UnsupportedEncodingException e) {
@@ -26,6 +26,7 @@ import android.util.Log;
 import java.util.Locale;
 
 import io.appium.settings.LocationTracker;
+import io.appium.settings.helpers.ResultTag;
 
 public class LocationInfoReceiver extends BroadcastReceiver
     implements HasAction {
@@ -35,7 +36,7 @@ public class LocationInfoReceiver extends BroadcastReceiver
 
     /**
      * Responds to broadcast requests like
-     * am broadcast -a io.appium.settings.location
+     * am broadcast -a io.appium.settings.location [--es ifNoneMatch tag]
      * with location properties separated by a single space
      */
     @Override
@@ -43,10 +44,17 @@ public class LocationInfoReceiver extends BroadcastReceiver
         Log.d(TAG, "Getting current location");
         final Location location = LocationTracker.getInstance().getLocation(context);
         if (location != null) {
+            String tag = ResultTag.build(String.format(Locale.ROOT, "%d.%d",
+                    location.getTime(), location.getElapsedRealtimeNanos()), intent);
+            if (ResultTag.matches(intent, tag)) {
+                ResultTag.setNotModified(this, tag);
+                return;
+            }
             setResultCode(Activity.RESULT_OK);
             // Decimal separator is a dot
             setResultData(String.format(Locale.US, "%.7f %.7f %.7f",
                     location.getLatitude(), location.getLongitude(), location.getAltitude()));
+            ResultTag.attach(this, tag);
         } else {
             setResultCode(Activity.RESULT_CANCELED);
             setResultData("");
@@ -0,0 +1,62 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.receivers;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import io.appium.settings.helpers.JsonResponseWriter;
+import io.appium.settings.location.MockLocationStats;
+
+public class MockLocationStatsReceiver extends BroadcastReceiver
+        implements HasAction {
+    private static final String TAG = MockLocationStatsReceiver.class.getSimpleName();
+    private static final String ACTION = "io.appium.settings.location.mock_stats";
+    private static final String RESET_SETTING_NAME = "reset";
+
+    /**
+     * Responds to broadcast requests like
+     * am broadcast -a io.appium.settings.location.mock_stats [--es reset true]
+     * with the timing statistics of mock location updates and of location calls
+     * of each mocked provider formatted as JSON.
+     * The statistics are reset after being retrieved if requested.
+     */
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        MockLocationStats stats = MockLocationStats.getInstance();
+        JsonResponseWriter writer = new JsonResponseWriter(1024);
+        writer.beginObject().name("schedule");
+        stats.writeSchedule(writer);
+        writer.name("providers");
+        stats.writeProviders(writer);
+        writer.endObject();
+        if (Boolean.parseBoolean(intent.getStringExtra(RESET_SETTING_NAME))) {
+            stats.reset();
+            Log.d(TAG, "Reset the mock location statistics");
+        }
+        setResultCode(Activity.RESULT_OK);
+        setResultData(writer.toString());
+    }
+
+    @Override
+    public String getAction() {
+        return ACTION;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.receivers;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+import io.appium.settings.helpers.JsonResponseWriter;
+import io.appium.settings.notifications.EvictionPolicy;
+import io.appium.settings.notifications.StoredNotifications;
+
+import static io.appium.settings.receivers.NotificationsReceiver.parseLong;
+
+public class NotificationsBufferReceiver extends BroadcastReceiver
+        implements HasAction {
+    private static final String TAG = NotificationsBufferReceiver.class.getSimpleName();
+    private static final String ACTION = "io.appium.settings.notifications.buffer";
+    private static final String CAPACITY_SETTING_NAME = "capacity";
+    private static final String MAX_BYTES_SETTING_NAME = "maxBytes";
+    private static final String EVICTION_POLICY_SETTING_NAME = "evictionPolicy";
+
+    private static EvictionPolicy parseEvictionPolicy(Intent intent, EvictionPolicy defaultValue) {
+        if (!intent.hasExtra(EVICTION_POLICY_SETTING_NAME)) {
+            return defaultValue;
+        }
+        String value = intent.getStringExtra(EVICTION_POLICY_SETTING_NAME);
+        EvictionPolicy policy = EvictionPolicy.fromName(value);
+        if (policy == null) {
+            throw new IllegalArgumentException(
+                    String.format("%s should be one of %s or %s. '%s' is given instead",
+                            EVICTION_POLICY_SETTING_NAME, EvictionPolicy.REMOVED_FIRST.getName(),
+                            EvictionPolicy.OLDEST_FIRST.getName(), value));
+        }
+        return policy;
+    }
+
+    /**
+     * Responds to broadcast requests like
+     * am broadcast -a io.appium.settings.notifications.buffer [--es capacity 1000] [--es maxBytes 1048576]
+     * [--es evictionPolicy oldestFirst]
+     * with the current notifications buffer limits and their utilization formatted as JSON.
+     * The limits are changed first if any of them is provided.
+     */
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        StoredNotifications storedNotifications = StoredNotifications.getInstance();
+        if (intent.hasExtra(CAPACITY_SETTING_NAME) || intent.hasExtra(MAX_BYTES_SETTING_NAME)
+                || intent.hasExtra(EVICTION_POLICY_SETTING_NAME)) {
+            // Limits, which are not provided, keep their configured values
+            try {
+                // Out of range values stay out of range after clamping, so they are still rejected
+                int capacity = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE,
+                        parseLong(intent, CAPACITY_SETTING_NAME, storedNotifications.getBufferCapacity())));
+                long maxBytes = parseLong(intent, MAX_BYTES_SETTING_NAME, storedNotifications.getBufferMaxBytes());
+                EvictionPolicy evictionPolicy = parseEvictionPolicy(intent,
+                        storedNotifications.getEvictionPolicy());
+                storedNotifications.configureBuffer(capacity, maxBytes, evictionPolicy);
+                Log.d(TAG, String.format("Configured the notifications buffer with capacity %s, " +
+                        "max size %s bytes and '%s' eviction policy", capacity, maxBytes, evictionPolicy.getName()));
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, e.getMessage());
+                setResultCode(Activity.RESULT_CANCELED);
+                setResultData(e.getMessage());
+                return;
+            }
+        }
+        JsonResponseWriter writer = new JsonResponseWriter(256);
+        storedNotifications.getSnapshot().writeUsage(writer);
+        setResultCode(Activity.RESULT_OK);
+        setResultData(writer.toString());
+    }
+
+    @Override
+    public String getAction() {
+        return ACTION;
+    }
+}
@@ -25,18 +25,41 @@ import android.provider.Settings;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
 import android.util.Log;
+import io.appium.settings.helpers.JsonResponseWriter;
+import io.appium.settings.helpers.ResultCompression;
+import io.appium.settings.helpers.ResultTag;
+import io.appium.settings.notifications.NotificationFields;
+import io.appium.settings.notifications.NotificationsFilter;
+import io.appium.settings.notifications.NotificationsSnapshot;
 import io.appium.settings.notifications.StoredNotifications;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class NotificationsReceiver extends BroadcastReceiver
         implements HasAction {
     private static final String TAG = NotificationsReceiver.class.getSimpleName();
     private static final String ENABLED_NOTIFICATION_LISTENERS = "enabled_notification_listeners";
     private static final String ACTION = "io.appium.settings.notifications";
+    private static final String SINCE_SETTING_NAME = "since";
+    private static final String PACKAGE_NAME_SETTING_NAME = "packageName";
+    private static final String KEY_SETTING_NAME = "key";
+    private static final String INCLUDE_REMOVED_SETTING_NAME = "includeRemoved";
+    private static final String TITLE_CONTAINS_SETTING_NAME = "titleContains";
+    private static final String TEXT_CONTAINS_SETTING_NAME = "textContains";
+    private static final String TITLE_PATTERN_SETTING_NAME = "titlePattern";
+    private static final String TEXT_PATTERN_SETTING_NAME = "textPattern";
+    private static final String POSTED_AFTER_SETTING_NAME = "postedAfter";
+    private static final String POSTED_BEFORE_SETTING_NAME = "postedBefore";
+    private static final String LIMIT_SETTING_NAME = "limit";
+    private static final String FIELDS_SETTING_NAME = "fields";
+    private static final int RESPONSE_OVERHEAD_LENGTH = 256;
+    // Rough length of a serialized notification with a short text
+    private static final int ESTIMATED_ITEM_LENGTH = 512;
+    public static final String NO_ACCESS_ERROR = "Appium Settings helper has no access to the system notifications. " +
+            "The access must be granted manually via 'Notification access' page in device Settings.";
 
-    private boolean isNotificationServiceEnabled(Context context) {
+    public static boolean isNotificationServiceEnabled(Context context) {
         String pkgName = context.getPackageName();
         final String enabledListeners = Settings.Secure.getString(context.getContentResolver(),
                 ENABLED_NOTIFICATION_LISTENERS);
@@ -52,43 +75,131 @@ public class NotificationsReceiver extends BroadcastReceiver
         return false;
     }
 
-    @Nullable
-    private JSONObject getResponse() {
+    static long parseLong(Intent intent, String name, long defaultValue) {
+        if (!intent.hasExtra(name)) {
+            return defaultValue;
+        }
+        String value = intent.getStringExtra(name);
         try {
-            JSONArray notifications = StoredNotifications.getInstance().getNotifications();
-            JSONObject result = new JSONObject();
-            result.put("statusBarNotifications", notifications);
-            return result;
-        } catch (JSONException e) {
-            e.printStackTrace();
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    String.format("%s should be a valid integer number. '%s' is given instead", name, value));
+        }
+    }
+
+    @Nullable
+    private static Pattern parsePattern(Intent intent, String name) {
+        String value = intent.getStringExtra(name);
+        if (value == null) {
             return null;
         }
+        try {
+            return Pattern.compile(value);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException(
+                    String.format("%s should be a valid regular expression. '%s' is given instead", name, value));
+        }
+    }
+
+    static NotificationsFilter parseFilter(Intent intent, NotificationsFilter filter) {
+        filter
+                .setPackageName(intent.getStringExtra(PACKAGE_NAME_SETTING_NAME))
+                .setKey(intent.getStringExtra(KEY_SETTING_NAME))
+                .setTitleContains(intent.getStringExtra(TITLE_CONTAINS_SETTING_NAME))
+                .setTextContains(intent.getStringExtra(TEXT_CONTAINS_SETTING_NAME))
+                .setTitlePattern(parsePattern(intent, TITLE_PATTERN_SETTING_NAME))
+                .setTextPattern(parsePattern(intent, TEXT_PATTERN_SETTING_NAME))
+                .setPostedAfter(parseLong(intent, POSTED_AFTER_SETTING_NAME, Long.MIN_VALUE))
+                .setPostedBefore(parseLong(intent, POSTED_BEFORE_SETTING_NAME, Long.MAX_VALUE))
+                // Values beyond the int range must not wrap around, negative values mean no limit
+                .setLimit((int) Math.min(Integer.MAX_VALUE,
+                        Math.max(0, parseLong(intent, LIMIT_SETTING_NAME, 0))));
+        if (intent.hasExtra(INCLUDE_REMOVED_SETTING_NAME)) {
+            filter.setIncludeRemoved(Boolean.parseBoolean(intent.getStringExtra(INCLUDE_REMOVED_SETTING_NAME)));
+        }
+        return filter;
+    }
+
+    static NotificationFields parseFields(Intent intent) {
+        String value = intent.getStringExtra(FIELDS_SETTING_NAME);
+        return value == null ? NotificationFields.ALL : NotificationFields.parse(value);
+    }
+
+    /**
+     * Writes the list of buffered notifications selected by the given request.
+     *
+     * @param intent the request containing the same extras as the broadcast
+     * @param writer the writer to write the resulting JSON to
+     * @throws IllegalArgumentException if the request contains invalid values
+     */
+    public static void writeResponse(Intent intent, JsonResponseWriter writer) {
+        writeResponse(intent, writer, StoredNotifications.getInstance().getSnapshot());
+    }
+
+    /**
+     * @param snapshot the buffer content to list notifications from. The result tag
+     *                 must be built from the same snapshot, so it describes the returned body.
+     */
+    private static void writeResponse(Intent intent, JsonResponseWriter writer, NotificationsSnapshot snapshot) {
+        long since = parseLong(intent, SINCE_SETTING_NAME, 0);
+        Log.d(TAG, String.format("Getting system notifications changed since %s", since));
+        NotificationsFilter filter = parseFilter(intent, new NotificationsFilter());
+        NotificationFields fields = parseFields(intent);
+        writer.beginObject().name("statusBarNotifications");
+        StoredNotifications.getInstance().writeNotifications(writer, snapshot, since, filter, fields);
+        writer.name("sequence").value(snapshot.getLastSequence()).name("buffer");
+        snapshot.writeUsage(writer);
+        writer.endObject();
     }
 
     /**
      * Responds to broadcast requests like
-     * am broadcast -a io.appium.settings.notifications
+     * am broadcast -a io.appium.settings.notifications [--es since 42] [--es packageName com.example]
+     * [--es compress gzip] [--es ifNoneMatch tag]
      * with the list of buffered notifications formatted as JSON
      */
     @Override
     public void onReceive(Context context, Intent intent) {
-        Log.d(TAG, "Getting system notifications");
+        boolean isCompressionRequested;
+        try {
+            isCompressionRequested = ResultCompression.isRequested(intent);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, e.getMessage());
+            setResultCode(Activity.RESULT_OK);
+            setResultData(e.getMessage());
+            return;
+        }
         String result;
+        String tag = null;
         if (isNotificationServiceEnabled(context)) {
-            JSONObject response = getResponse();
-            if (response == null) {
-                result = "Cannot parse the resulting notifications list. Check the device log for more details.";
+            NotificationsSnapshot snapshot = StoredNotifications.getInstance().getSnapshot();
+            tag = ResultTag.build(snapshot.getVersion(), intent);
+            if (ResultTag.matches(intent, tag)) {
+                ResultTag.setNotModified(this, tag);
+                return;
+            }
+            try {
+                JsonResponseWriter writer = new JsonResponseWriter(RESPONSE_OVERHEAD_LENGTH
+                        + snapshot.size() * ESTIMATED_ITEM_LENGTH);
+                writeResponse(intent, writer, snapshot);
+                result = writer.toString();
+            } catch (IllegalArgumentException e) {
+                result = e.getMessage();
+                tag = null;
                 Log.e(TAG, result);
-            } else {
-                result = response.toString();
             }
         } else {
-            result = "Appium Settings helper has no access to the system notifications. " +
-                    "The access must be granted manually via 'Notification access' page in device Settings.";
+            result = NO_ACCESS_ERROR;
             Log.e(TAG, result);
         }
-        setResultCode(Activity.RESULT_OK);
-        setResultData(result);
+        if (isCompressionRequested) {
+            ResultCompression.setResult(this, Activity.RESULT_OK, result);
+        } else {
+            setResultCode(Activity.RESULT_OK);
+            setResultData(result);
+        }
+        ResultTag.attach(this, tag);
     }
 
     @Override
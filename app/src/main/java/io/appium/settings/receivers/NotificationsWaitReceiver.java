@@ -0,0 +1,137 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.receivers;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import io.appium.settings.helpers.JsonResponseWriter;
+import io.appium.settings.notifications.NotificationFields;
+import io.appium.settings.notifications.NotificationWaiter;
+import io.appium.settings.notifications.NotificationsFilter;
+import io.appium.settings.notifications.StoredNotification;
+import io.appium.settings.notifications.StoredNotifications;
+
+import static io.appium.settings.receivers.NotificationsReceiver.NO_ACCESS_ERROR;
+import static io.appium.settings.receivers.NotificationsReceiver.isNotificationServiceEnabled;
+import static io.appium.settings.receivers.NotificationsReceiver.parseFields;
+import static io.appium.settings.receivers.NotificationsReceiver.parseFilter;
+import static io.appium.settings.receivers.NotificationsReceiver.parseLong;
+
+public class NotificationsWaitReceiver extends BroadcastReceiver
+        implements HasAction {
+    private static final String TAG = NotificationsWaitReceiver.class.getSimpleName();
+    private static final String ACTION = "io.appium.settings.notifications.wait";
+    private static final String TIMEOUT_SETTING_NAME = "timeout";
+    private static final String SINCE_SETTING_NAME = "since";
+    private static final long DEFAULT_TIMEOUT_MS = 10000;
+    // Background broadcasts are considered hanging after 60 seconds
+    private static final long MAX_TIMEOUT_MS = 50000;
+
+    private static class PendingWait implements NotificationWaiter.Callback, Runnable {
+        private final PendingResult pendingResult;
+        private final Handler handler;
+        private final long timeoutMs;
+        private final NotificationFields fields;
+        private NotificationWaiter waiter;
+
+        PendingWait(PendingResult pendingResult, Handler handler, long timeoutMs, NotificationFields fields) {
+            this.pendingResult = pendingResult;
+            this.handler = handler;
+            this.timeoutMs = timeoutMs;
+            this.fields = fields;
+        }
+
+        void start(NotificationsFilter filter, long since) {
+            waiter = new NotificationWaiter(filter, this);
+            handler.postDelayed(this, timeoutMs);
+            StoredNotifications.getInstance().addWaiter(waiter, since);
+        }
+
+        @Override
+        public void onMatch(StoredNotification item) {
+            handler.removeCallbacks(this);
+            Log.d(TAG, String.format("Got the matching notification identified by %s", item.getKey()));
+            JsonResponseWriter writer = new JsonResponseWriter()
+                    .beginObject()
+                    .name("statusBarNotifications")
+                    .beginArray();
+            item.writeTo(writer, fields);
+            writer.endArray()
+                    .name("sequence").value(item.getSequence())
+                    .endObject();
+            pendingResult.setResult(Activity.RESULT_OK, writer.toString(), null);
+            pendingResult.finish();
+        }
+
+        @Override
+        public void run() {
+            if (!waiter.cancel()) {
+                return;
+            }
+            StoredNotifications.getInstance().removeWaiter(waiter);
+            String message = String.format("No matching notification has been received within %sms", timeoutMs);
+            Log.d(TAG, message);
+            pendingResult.setResult(Activity.RESULT_CANCELED, message, null);
+            pendingResult.finish();
+        }
+    }
+
+    /**
+     * Responds to broadcast requests like
+     * am broadcast -a io.appium.settings.notifications.wait --es packageName com.example --es timeout 20000
+     * with the first matching notification formatted as JSON as soon as it is posted
+     * or with an error description if the timeout expires
+     */
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (!isNotificationServiceEnabled(context)) {
+            Log.e(TAG, NO_ACCESS_ERROR);
+            setResultCode(Activity.RESULT_CANCELED);
+            setResultData(NO_ACCESS_ERROR);
+            return;
+        }
+        NotificationsFilter filter;
+        NotificationFields fields;
+        long timeoutMs;
+        long since;
+        try {
+            filter = parseFilter(intent, new NotificationsFilter().setIncludeRemoved(false));
+            fields = parseFields(intent);
+            timeoutMs = Math.max(0, Math.min(MAX_TIMEOUT_MS,
+                    parseLong(intent, TIMEOUT_SETTING_NAME, DEFAULT_TIMEOUT_MS)));
+            since = parseLong(intent, SINCE_SETTING_NAME, 0);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, e.getMessage());
+            setResultCode(Activity.RESULT_CANCELED);
+            setResultData(e.getMessage());
+            return;
+        }
+        Log.d(TAG, String.format("Waiting up to %sms for a matching notification", timeoutMs));
+        new PendingWait(goAsync(), new Handler(Looper.getMainLooper()), timeoutMs, fields)
+                .start(filter, since);
+    }
+
+    @Override
+    public String getAction() {
+        return ACTION;
+    }
+}
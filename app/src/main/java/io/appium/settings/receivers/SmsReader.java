@@ -21,13 +21,23 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
 import android.net.Uri;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
 import android.util.Log;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import io.appium.settings.helpers.JsonResponseWriter;
+import io.appium.settings.helpers.ResultCompression;
+import io.appium.settings.helpers.ResultTag;
+import io.appium.settings.sms.SmsCache;
+import io.appium.settings.sms.SmsFilter;
+import io.appium.settings.sms.StoredSms;
 
-import static io.appium.settings.helpers.Utils.formatJsonNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class SmsReader extends BroadcastReceiver implements HasAction {
     private static final String TAG = SmsReader.class.getSimpleName();
@@ -35,41 +45,314 @@ public class SmsReader extends BroadcastReceiver implements HasAction {
     private static final String ACTION = "io.appium.settings.sms.read";
     private static final int MAX_ITEMS = 100;
     private static final String MAX_ITEMS_SETTING_NAME = "max";
-    private static final String[][] SMS_INFO_MAPPING = new String[][]{
-            {"_id", "id"},
-            {"address", "address"},
-            {"person", "person"},
-            {"date", "date"},
-            {"read", "read"},
-            {"status", "status"},
-            {"type", "type"},
-            {"subject", "subject"},
-            {"body", "body"},
-            {"service_center", "serviceCenter"}
-    };
-
-    private JSONObject listSms(Context context, int maxCount) throws JSONException {
+    private static final String PAGINATE_SETTING_NAME = "paginate";
+    private static final String AFTER_SETTING_NAME = "after";
+    private static final String INCLUDE_TOTAL_SETTING_NAME = "includeTotal";
+    private static final String ADDRESS_SETTING_NAME = "address";
+    private static final String SINCE_SETTING_NAME = "since";
+    private static final String UNTIL_SETTING_NAME = "until";
+    private static final String BODY_CONTAINS_SETTING_NAME = "bodyContains";
+    private static final String EXTRACT_SETTING_NAME = "extract";
+    private static final String UNABLE_TO_LIST_ERROR = "Appium Settings helper is unable to list SMS messages. " +
+            "Check the logcat output for more details.";
+    private static final int RESPONSE_OVERHEAD_LENGTH = 128;
+    // Rough length of a serialized message with a short text
+    private static final int ESTIMATED_ITEM_LENGTH = 384;
+
+    @Nullable
+    private static Long parseTimestamp(Intent intent, String name) {
+        String value = intent.getStringExtra(name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    String.format("%s should be a valid timestamp in milliseconds. '%s' is given instead",
+                            name, value));
+        }
+    }
+
+    static SmsFilter parseFilter(Intent intent) {
+        SmsFilter filter = new SmsFilter()
+                .setAddress(intent.getStringExtra(ADDRESS_SETTING_NAME))
+                .setBodyContains(intent.getStringExtra(BODY_CONTAINS_SETTING_NAME));
+        Long since = parseTimestamp(intent, SINCE_SETTING_NAME);
+        if (since != null) {
+            filter.setSince(since);
+        }
+        Long until = parseTimestamp(intent, UNTIL_SETTING_NAME);
+        if (until != null) {
+            filter.setUntil(until);
+        }
+        String extract = intent.getStringExtra(EXTRACT_SETTING_NAME);
+        if (extract != null) {
+            try {
+                filter.setExtract(Pattern.compile(extract));
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException(
+                        String.format("%s should be a valid regular expression. '%s' is given instead",
+                                EXTRACT_SETTING_NAME, extract));
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * @param writer the writer to write the message to
+     * @param item the message to write
+     * @param filter the filter containing the extraction pattern
+     * @return false if the message does not match the extraction pattern and thus has not been written
+     */
+    static boolean writeItem(JsonResponseWriter writer, StoredSms item, SmsFilter filter) {
+        if (!filter.hasExtract()) {
+            item.writeTo(writer);
+            return true;
+        }
+        String match = filter.extract(item);
+        if (match == null) {
+            return false;
+        }
+        item.writeTo(writer, match);
+        return true;
+    }
+
+    @Nullable
+    private static Cursor querySms(Context context, @Nullable String selection,
+                                   @Nullable String[] selectionArgs, String sortOrder) {
+        try {
+            return context.getContentResolver().query(INCOMING_SMS,
+                    StoredSms.PROJECTION, selection, selectionArgs, sortOrder);
+        } catch (IllegalArgumentException | SQLiteException e) {
+            // Some vendor-specific providers might not have all the standard columns
+            Log.w(TAG, "Cannot query SMS messages with the explicit projection. Retrying with all columns", e);
+            return context.getContentResolver().query(INCOMING_SMS,
+                    null, selection, selectionArgs, sortOrder);
+        }
+    }
+
+    private static int countSms(Context context, @Nullable String selection, @Nullable String[] selectionArgs) {
         Cursor cursor = context.getContentResolver().query(INCOMING_SMS,
-                null, null, null, "date desc");
+                new String[]{"_id"}, selection, selectionArgs, null);
+        if (cursor == null) {
+            return 0;
+        }
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Only fetches the most recent message, so the version is cheap to compute. Other changes are
+     * only reflected by the count of changes reported to the SMS cache while it is running.
+     *
+     * @return the value, which changes whenever a message is added to the inbox or the most recent one
+     * is removed from it, or null if the provider cannot be queried
+     */
+    @Nullable
+    private static String getInboxVersion(Context context) {
+        long reportedChanges = SmsCache.getInstance().getReportedChanges();
+        Cursor cursor;
+        try {
+            cursor = context.getContentResolver().query(INCOMING_SMS,
+                    new String[]{"_id", "date"}, null, null, "_id desc LIMIT 1");
+        } catch (Exception e) {
+            Log.w(TAG, "Cannot query the SMS inbox version", e);
+            return null;
+        }
+        if (cursor == null) {
+            return null;
+        }
+        long lastId;
+        long lastDate;
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            if (!cursor.moveToFirst()) {
+                return String.valueOf(reportedChanges);
+            }
+            lastId = cursor.getLong(0);
+            lastDate = cursor.getLong(1);
+        } finally {
+            cursor.close();
+        }
+        return String.format(Locale.ROOT, "%d.%d.%d", reportedChanges, lastId, lastDate);
+    }
+
+    /**
+     * @param token page token in format date:id
+     * @return the parsed date and id values
+     */
+    private static long[] parsePageToken(String token) {
+        String[] parts = token.split(":");
+        if (parts.length == 2) {
+            try {
+                return new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1])};
+            } catch (NumberFormatException e) {
+                // fall through
+            }
+        }
+        throw new IllegalArgumentException(
+                String.format("%s should be a page token in format date:id. '%s' is given instead",
+                        AFTER_SETTING_NAME, token));
+    }
+
+    private static void writeResultTail(JsonResponseWriter writer, boolean paginate,
+                                        @Nullable String nextPageToken, @Nullable Integer total) {
+        writer.endArray();
+        if (paginate) {
+            writer.name("next").value(nextPageToken);
+        }
+        if (total != null) {
+            writer.name("total").value(total);
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Lists SMS messages from the cache, which is kept up to date by observing the SMS provider.
+     * The other arguments are the same as for
+     * {@link #listSms(Context, JsonResponseWriter, int, SmsFilter, String, boolean, boolean)}.
+     *
+     * @param snapshot the cache content to list messages from
+     * @return false if the cache is not available or does not contain enough messages
+     * to answer the request. Nothing is written in such case.
+     */
+    private static boolean listCachedSms(SmsCache.Snapshot snapshot, JsonResponseWriter writer, int maxCount,
+                                         SmsFilter filter, @Nullable String after, boolean paginate,
+                                         boolean includeTotal) {
+        boolean needsTotal = !paginate || includeTotal;
+        if (needsTotal && !snapshot.isComplete()) {
+            return false;
+        }
+        long[] afterToken = after == null ? null : parsePageToken(after);
+        // Only select messages first, since it is not known yet whether the cache is enough
+        List<StoredSms> selected = new ArrayList<>();
+        List<String> matches = new ArrayList<>();
+        String lastItemToken = null;
+        boolean hasMore = false;
+        int total = 0;
+        for (StoredSms item : snapshot.getItems()) {
+            if (!filter.matches(item)) {
+                continue;
+            }
+            total++;
+            if (afterToken != null && !item.isAfter(afterToken[0], afterToken[1])) {
+                continue;
+            }
+            if (hasMore || selected.size() >= maxCount) {
+                hasMore = true;
+                if (!needsTotal) {
+                    break;
+                }
+                continue;
+            }
+            lastItemToken = item.getPageToken();
+            if (filter.hasExtract()) {
+                String match = filter.extract(item);
+                if (match == null) {
+                    continue;
+                }
+                matches.add(match);
+            }
+            selected.add(item);
+        }
+        if (!hasMore && !snapshot.isComplete()) {
+            // Older messages that are not cached might match
+            return false;
+        }
+        writer.beginObject().name("items").beginArray();
+        for (int i = 0; i < selected.size(); i++) {
+            if (filter.hasExtract()) {
+                selected.get(i).writeTo(writer, matches.get(i));
+            } else {
+                selected.get(i).writeTo(writer);
+            }
+        }
+        writeResultTail(writer, paginate, hasMore ? lastItemToken : null, needsTotal ? total : null);
+        return true;
+    }
+
+    /**
+     * Lists SMS messages starting from the most recent one.
+     * Rows are written to the resulting JSON directly while the cursor is iterated.
+     *
+     * @param context the context instance
+     * @param writer the writer to write the resulting JSON to
+     * @param maxCount the maximum count of items to list
+     * @param filter the criteria messages must match
+     * @param after the page token of the last message of the previous page. Only messages
+     *              older than it are listed if the token is provided.
+     * @param paginate whether to only query the requested page and to include the next page token
+     *                 into the result. The total count of messages is not computed in this mode
+     *                 unless includeTotal is set.
+     * @param includeTotal whether to include the total count of messages into the result
+     */
+    private static void listSms(Context context, JsonResponseWriter writer, int maxCount, SmsFilter filter,
+                                @Nullable String after, boolean paginate, boolean includeTotal) {
+        if (maxCount <= 0) {
+            // Nothing to list, but clients still expect the items array
+            writer.beginObject().name("items").beginArray();
+            writeResultTail(writer, paginate, null, paginate && !includeTotal
+                    ? null
+                    : countSms(context, filter.getSelection(), filter.getSelectionArgs()));
+            return;
+        }
+        List<String> clauses = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        filter.addSelection(clauses, args);
+        if (after != null) {
+            long[] afterToken = parsePageToken(after);
+            clauses.add("(date < ? OR (date = ? AND _id < ?))");
+            args.add(String.valueOf(afterToken[0]));
+            args.add(String.valueOf(afterToken[0]));
+            args.add(String.valueOf(afterToken[1]));
+        }
+        String selection = clauses.isEmpty() ? null : TextUtils.join(" AND ", clauses);
+        String[] selectionArgs = args.isEmpty() ? null : args.toArray(new String[0]);
+        // Fetch one extra item to know whether there is a next page
+        String sortOrder = paginate
+                ? String.format(Locale.ROOT, "date desc, _id desc LIMIT %d", maxCount + 1)
+                : "date desc";
+        Cursor cursor = querySms(context, selection, selectionArgs, sortOrder);
         //noinspection TryFinallyCanBeTryWithResources
         try {
-            JSONArray items = new JSONArray();
+            int rowsCount = cursor == null ? 0 : cursor.getCount();
+            writer.beginObject().name("items").beginArray();
+            String nextPageToken = null;
             if (cursor != null && cursor.moveToFirst()) {
+                int[] columnIndexes = StoredSms.getColumnIndexes(cursor);
+                int idColumnIndex = cursor.getColumnIndex("_id");
+                int dateColumnIndex = cursor.getColumnIndex("date");
+                long lastItemDate;
+                long lastItemId;
+                int count = 0;
                 do {
-                    JSONObject item = new JSONObject();
-                    for (String[] entry : SMS_INFO_MAPPING) {
-                        int columnIndex = cursor.getColumnIndex(entry[0]);
-                        if (columnIndex >= 0) {
-                            item.put(entry[1], formatJsonNull(cursor.getString(columnIndex)));
-                        }
+                    lastItemDate = cursor.getLong(dateColumnIndex);
+                    lastItemId = cursor.getLong(idColumnIndex);
+                    if (!filter.hasExtract()) {
+                        StoredSms.writeRow(cursor, columnIndexes, writer);
+                        count++;
+                    } else if (writeItem(writer, StoredSms.fromCursor(cursor, columnIndexes), filter)) {
+                        count++;
                     }
-                    items.put(item);
-                } while (cursor.moveToNext() && items.length() < maxCount);
+                } while (cursor.moveToNext() && count < maxCount);
+                // Messages not matching the extraction pattern are skipped after being fetched,
+                // so the page may be incomplete while there are still older messages
+                if (!cursor.isAfterLast() || (paginate && rowsCount > maxCount)) {
+                    nextPageToken = lastItemDate + ":" + lastItemId;
+                }
             }
-            JSONObject result = new JSONObject();
-            result.put("items", items);
-            result.put("total", cursor == null ? 0 : cursor.getCount());
-            return result;
+            Integer total = null;
+            if (!paginate) {
+                total = rowsCount;
+            } else if (includeTotal) {
+                total = countSms(context, filter.getSelection(), filter.getSelectionArgs());
+            }
+            writeResultTail(writer, paginate, nextPageToken, total);
         } finally {
             if (cursor != null) {
                 cursor.close();
@@ -77,13 +360,7 @@ public class SmsReader extends BroadcastReceiver implements HasAction {
         }
     }
 
-    /**
-     * Responds to broadcast requests like
-     * am broadcast -a io.appium.settings.sms.read --es max 10
-     * with the list of the recent SMS messages formatted as JSON
-     */
-    @Override
-    public void onReceive(Context context, Intent intent) {
+    private static int parseMaxItems(Intent intent) {
         int maxItems = MAX_ITEMS;
         if (intent.hasExtra(MAX_ITEMS_SETTING_NAME)) {
             try {
@@ -92,18 +369,99 @@ public class SmsReader extends BroadcastReceiver implements HasAction {
                 e.printStackTrace();
             }
         }
+        return maxItems;
+    }
+
+    /**
+     * Writes the list of the recent SMS messages selected by the given request.
+     *
+     * @param context the context instance
+     * @param intent the request containing the same extras as the broadcast
+     * @param writer the writer to write the resulting JSON to
+     * @throws IllegalArgumentException if the request contains invalid values
+     */
+    public static void writeResponse(Context context, Intent intent, JsonResponseWriter writer) {
+        writeResponse(context, intent, writer, SmsCache.getInstance().getFreshSnapshot(context));
+    }
+
+    /**
+     * @param snapshot the cache content to answer the request from if possible
+     *                 or null if the SMS provider must be queried
+     */
+    private static void writeResponse(Context context, Intent intent, JsonResponseWriter writer,
+                                      @Nullable SmsCache.Snapshot snapshot) {
+        int maxItems = parseMaxItems(intent);
+        String after = intent.getStringExtra(AFTER_SETTING_NAME);
+        boolean paginate = after != null
+                || Boolean.parseBoolean(intent.getStringExtra(PAGINATE_SETTING_NAME));
+        boolean includeTotal = Boolean.parseBoolean(intent.getStringExtra(INCLUDE_TOTAL_SETTING_NAME));
         Log.d(TAG, String.format("Getting the recent %s SMS messages", maxItems));
+        SmsFilter filter = parseFilter(intent);
+        if (snapshot != null && listCachedSms(snapshot, writer, maxItems, filter, after, paginate, includeTotal)) {
+            Log.d(TAG, "The result has been retrieved from the SMS cache");
+        } else {
+            listSms(context, writer, maxItems, filter, after, paginate, includeTotal);
+        }
+    }
+
+    /**
+     * Responds to broadcast requests like
+     * am broadcast -a io.appium.settings.sms.read --es max 10 [--es paginate true] [--es after 1581936422203:2]
+     * [--es address +123456789] [--es since 1581936382740] [--es bodyContains code] [--es extract '([0-9]{6})']
+     * [--es compress gzip] [--es ifNoneMatch tag] [--es etag true]
+     * with the list of the recent SMS messages formatted as JSON.
+     * Results might be taken from the SMS cache once it has processed all the changes reported by the
+     * provider and contains the most recent inbox message.
+     */
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        boolean isCompressionRequested;
+        try {
+            isCompressionRequested = ResultCompression.isRequested(intent);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, e.getMessage());
+            setResultCode(Activity.RESULT_OK);
+            setResultData(e.getMessage());
+            return;
+        }
+        SmsCache.Snapshot snapshot = SmsCache.getInstance().getFreshSnapshot(context);
+        String tag = null;
+        if (snapshot != null) {
+            // The result is either listed from the same snapshot or from the provider,
+            // whose content is not older, so the tag never claims newer data than returned
+            tag = ResultTag.build(snapshot.getVersion(), intent);
+        } else if (ResultTag.isRequested(intent)) {
+            // The version is taken before messages are read for the same reason
+            String inboxVersion = getInboxVersion(context);
+            tag = inboxVersion == null ? null : ResultTag.build(inboxVersion, intent);
+        }
+        if (ResultTag.matches(intent, tag)) {
+            ResultTag.setNotModified(this, tag);
+            return;
+        }
         String output;
         try {
-            output = listSms(context, maxItems).toString();
+            JsonResponseWriter writer = new JsonResponseWriter(RESPONSE_OVERHEAD_LENGTH
+                    + Math.max(0, Math.min(parseMaxItems(intent), MAX_ITEMS)) * ESTIMATED_ITEM_LENGTH);
+            writeResponse(context, intent, writer, snapshot);
+            output = writer.toString();
+        } catch (IllegalArgumentException e) {
+            output = e.getMessage();
+            tag = null;
+            Log.e(TAG, output);
         } catch (Exception e) {
             e.printStackTrace();
-            output = "Appium Settings helper is unable to list SMS messages. " +
-                    "Check the logcat output for more details.";
+            output = UNABLE_TO_LIST_ERROR;
+            tag = null;
             Log.e(TAG, output);
         }
-        setResultCode(Activity.RESULT_OK);
-        setResultData(output);
+        if (isCompressionRequested) {
+            ResultCompression.setResult(this, Activity.RESULT_OK, output);
+        } else {
+            setResultCode(Activity.RESULT_OK);
+            setResultData(output);
+        }
+        ResultTag.attach(this, tag);
     }
 
     @Override
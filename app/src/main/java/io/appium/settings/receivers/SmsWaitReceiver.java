@@ -0,0 +1,122 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.receivers;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import io.appium.settings.helpers.JsonResponseWriter;
+import io.appium.settings.sms.SmsCache;
+import io.appium.settings.sms.SmsFilter;
+import io.appium.settings.sms.SmsWaiter;
+import io.appium.settings.sms.StoredSms;
+
+import static io.appium.settings.receivers.NotificationsReceiver.parseLong;
+import static io.appium.settings.receivers.SmsReader.writeItem;
+import static io.appium.settings.receivers.SmsReader.parseFilter;
+
+public class SmsWaitReceiver extends BroadcastReceiver implements HasAction {
+    private static final String TAG = SmsWaitReceiver.class.getSimpleName();
+    private static final String ACTION = "io.appium.settings.sms.wait";
+    private static final String TIMEOUT_SETTING_NAME = "timeout";
+    private static final String SINCE_SETTING_NAME = "since";
+    private static final long DEFAULT_TIMEOUT_MS = 10000;
+    // Background broadcasts are considered hanging after 60 seconds
+    private static final long MAX_TIMEOUT_MS = 50000;
+
+    private static class PendingWait implements SmsWaiter.Callback, Runnable {
+        private final PendingResult pendingResult;
+        private final Handler handler;
+        private final long timeoutMs;
+        private final SmsFilter filter;
+        private SmsWaiter waiter;
+
+        PendingWait(PendingResult pendingResult, Handler handler, long timeoutMs, SmsFilter filter) {
+            this.pendingResult = pendingResult;
+            this.handler = handler;
+            this.timeoutMs = timeoutMs;
+            this.filter = filter;
+        }
+
+        void start(long since) {
+            waiter = new SmsWaiter(filter, this);
+            handler.postDelayed(this, timeoutMs);
+            SmsCache.getInstance().addWaiter(waiter, since);
+        }
+
+        @Override
+        public void onMatch(StoredSms item) {
+            handler.removeCallbacks(this);
+            Log.d(TAG, String.format("Got the matching SMS message identified by %s", item.getId()));
+            JsonResponseWriter writer = new JsonResponseWriter().beginObject().name("items").beginArray();
+            writeItem(writer, item, filter);
+            pendingResult.setResult(Activity.RESULT_OK, writer.endArray().endObject().toString(), null);
+            pendingResult.finish();
+        }
+
+        @Override
+        public void run() {
+            if (!waiter.cancel()) {
+                return;
+            }
+            SmsCache.getInstance().removeWaiter(waiter);
+            String message = String.format("No matching SMS message has been received within %sms", timeoutMs);
+            Log.d(TAG, message);
+            pendingResult.setResult(Activity.RESULT_CANCELED, message, null);
+            pendingResult.finish();
+        }
+    }
+
+    /**
+     * Responds to broadcast requests like
+     * am broadcast -a io.appium.settings.sms.wait --es address +123456789 --es extract '([0-9]{6})'
+     * --es timeout 20000
+     * with the first matching incoming SMS message formatted as JSON as soon as it is received
+     * or with an error description if the timeout expires
+     */
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        SmsFilter filter;
+        long timeoutMs;
+        long since;
+        try {
+            filter = parseFilter(intent);
+            timeoutMs = Math.max(0, Math.min(MAX_TIMEOUT_MS,
+                    parseLong(intent, TIMEOUT_SETTING_NAME, DEFAULT_TIMEOUT_MS)));
+            since = parseLong(intent, SINCE_SETTING_NAME, 0);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, e.getMessage());
+            setResultCode(Activity.RESULT_CANCELED);
+            setResultData(e.getMessage());
+            return;
+        }
+        // The cache is normally started by the foreground service
+        SmsCache.getInstance().start(context);
+        Log.d(TAG, String.format("Waiting up to %sms for a matching SMS message", timeoutMs));
+        new PendingWait(goAsync(), new Handler(Looper.getMainLooper()), timeoutMs, filter)
+                .start(since);
+    }
+
+    @Override
+    public String getAction() {
+        return ACTION;
+    }
+}
@@ -0,0 +1,455 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.sms;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the most recent incoming SMS messages in memory.
+ * The content is updated incrementally on changes reported by the SMS provider, so
+ * readers do not need to query the provider and waiters get notified about new messages
+ * as soon as they arrive.
+ * Provider changes are counted as soon as they are reported, but processed asynchronously,
+ * so the cache lags slightly behind the provider. Readers should use
+ * {@link #getFreshSnapshot(Context)}, which makes sure all the reported changes have been processed
+ * and no newer message has been received yet.
+ */
+public class SmsCache {
+    private static final String TAG = SmsCache.class.getSimpleName();
+    private static final Uri ALL_SMS = Uri.parse("content://sms");
+    private static final Uri INCOMING_SMS = Uri.parse("content://sms/inbox");
+    public static final int CAPACITY = 100;
+
+    /**
+     * Immutable content of the cache.
+     */
+    public static class Snapshot {
+        private final StoredSms[] items;
+        private final boolean isComplete;
+        private final long lastId;
+        private final long version;
+
+        Snapshot(StoredSms[] items, boolean isComplete, long lastId, long version) {
+            this.items = items;
+            this.isComplete = isComplete;
+            this.lastId = lastId;
+            this.version = version;
+        }
+
+        /**
+         * @return the value, which changes whenever the cache content changes
+         */
+        public String getVersion() {
+            return "c" + version;
+        }
+
+        /**
+         * @return cached messages, the most recent one goes first. These are always
+         * the most recent messages in the inbox.
+         */
+        public List<StoredSms> getItems() {
+            return Collections.unmodifiableList(Arrays.asList(items));
+        }
+
+        /**
+         * @return true if the cache contains all the messages from the inbox
+         */
+        public boolean isComplete() {
+            return isComplete;
+        }
+    }
+
+    private Context context = null;
+    private HandlerThread thread = null;
+    private Handler handler = null;
+    private ContentObserver observer = null;
+    // Only modified on the handler thread
+    private final List<StoredSms> items = new ArrayList<>();
+    private boolean isComplete = false;
+    private long lastId = 0;
+    private long version = 0;
+    // Incremented by the observer as soon as the provider reports a change
+    private final AtomicLong reportedChanges = new AtomicLong();
+    // The count of reported changes the published snapshot reflects
+    private volatile long appliedChanges = 0;
+    private volatile Snapshot snapshot = null;
+    private final List<SmsWaiter> waiters = new CopyOnWriteArrayList<>();
+
+    private SmsCache() {}
+
+    private static SmsCache instance = null;
+    public static synchronized SmsCache getInstance() {
+        if (instance == null) {
+            instance = new SmsCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts observing the SMS provider. The call does nothing if the cache has been already started.
+     *
+     * @param context the context to access the provider with
+     */
+    public synchronized void start(Context context) {
+        if (thread != null) {
+            return;
+        }
+        this.context = context.getApplicationContext();
+        thread = new HandlerThread(TAG);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        // Changes are reported on a binder thread, so they are counted before being processed
+        observer = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange) {
+                onChange(selfChange, null);
+            }
+
+            @Override
+            public void onChange(boolean selfChange, @Nullable Uri uri) {
+                onChangeReported(uri);
+            }
+        };
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                // Changes reported before the cache has been started are covered by the reload
+                long changes = reportedChanges.get();
+                reload();
+                setAppliedChanges(changes);
+            }
+        });
+        try {
+            this.context.getContentResolver().registerContentObserver(ALL_SMS, true, observer);
+        } catch (SecurityException e) {
+            Log.e(TAG, "Cannot observe SMS messages", e);
+            stop();
+            return;
+        }
+        Log.d(TAG, "Started observing SMS messages");
+    }
+
+    /**
+     * Stops observing the SMS provider and drops the cached messages.
+     */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        context.getContentResolver().unregisterContentObserver(observer);
+        thread.quit();
+        thread = null;
+        // A reload, which is still running, does not publish its result once the handler is reset
+        handler = null;
+        observer = null;
+        snapshot = null;
+        Log.d(TAG, "Stopped observing SMS messages");
+    }
+
+    /**
+     * @return the cached messages or null if the cache is not ready yet
+     */
+    @Nullable
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Checks that the cache has processed all the changes reported by the provider and that
+     * it contains the most recent message in the inbox, so a message, which has been just received,
+     * but not yet reported by the provider, is never missed. The check only fetches a single row.
+     *
+     * @param context the context to access the provider with
+     * @return the cached messages or null if the cache is not ready yet or lags behind the provider
+     */
+    @Nullable
+    public Snapshot getFreshSnapshot(Context context) {
+        // The snapshot is published before the changes it reflects are marked as applied
+        long changes = reportedChanges.get();
+        if (appliedChanges < changes) {
+            return null;
+        }
+        Snapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        Cursor cursor;
+        try {
+            cursor = context.getContentResolver().query(INCOMING_SMS, new String[]{"_id"},
+                    null, null, "_id desc LIMIT 1");
+        } catch (Exception e) {
+            Log.w(TAG, "Cannot check whether the SMS cache is up to date", e);
+            return null;
+        }
+        if (cursor == null) {
+            return null;
+        }
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            long latestId = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+            return latestId == current.lastId ? current : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the count of changes reported by the SMS provider since the process has been started.
+     * It only grows while the cache is running.
+     */
+    public long getReportedChanges() {
+        return reportedChanges.get();
+    }
+
+    private void onChangeReported(@Nullable final Uri uri) {
+        final long changes = reportedChanges.incrementAndGet();
+        Handler currentHandler;
+        synchronized (this) {
+            currentHandler = handler;
+        }
+        if (currentHandler == null) {
+            return;
+        }
+        currentHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                onProviderChange(uri);
+                setAppliedChanges(changes);
+            }
+        });
+    }
+
+    /**
+     * Replaces the published snapshot unless the cache has been stopped
+     * or restarted with another handler thread in the meantime.
+     */
+    private synchronized void setSnapshot(@Nullable Snapshot value) {
+        if (isHandlerThread()) {
+            snapshot = value;
+        }
+    }
+
+    private synchronized void setAppliedChanges(long value) {
+        if (isHandlerThread()) {
+            appliedChanges = value;
+        }
+    }
+
+    private boolean isHandlerThread() {
+        return handler != null && handler.getLooper() == Looper.myLooper();
+    }
+
+    @Nullable
+    private Cursor query(@Nullable String selection, @Nullable String[] selectionArgs, int limit) {
+        try {
+            return context.getContentResolver().query(INCOMING_SMS, StoredSms.PROJECTION, selection,
+                    selectionArgs, String.format(Locale.ROOT, "date desc, _id desc LIMIT %d", limit));
+        } catch (Exception e) {
+            Log.e(TAG, "Cannot query SMS messages", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the fetched messages or null if the provider could not be queried
+     */
+    @Nullable
+    private List<StoredSms> fetch(@Nullable String selection, @Nullable String[] selectionArgs, int limit) {
+        Cursor cursor = query(selection, selectionArgs, limit);
+        if (cursor == null) {
+            return null;
+        }
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            List<StoredSms> result = new ArrayList<>();
+            int[] columnIndexes = StoredSms.getColumnIndexes(cursor);
+            while (cursor.moveToNext()) {
+                result.add(StoredSms.fromCursor(cursor, columnIndexes));
+            }
+            return result;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void publish() {
+        lastId = 0;
+        for (StoredSms item : items) {
+            lastId = Math.max(lastId, item.getId());
+        }
+        version++;
+        setSnapshot(new Snapshot(items.toArray(new StoredSms[0]), isComplete, lastId, version));
+    }
+
+    private void reload() {
+        // Fetch one extra item to know whether the whole inbox fits into the cache
+        List<StoredSms> fetched = fetch(null, null, CAPACITY + 1);
+        if (fetched == null) {
+            setSnapshot(null);
+            return;
+        }
+        long previousLastId = snapshot == null ? Long.MAX_VALUE : lastId;
+        isComplete = fetched.size() <= CAPACITY;
+        items.clear();
+        items.addAll(fetched.subList(0, Math.min(CAPACITY, fetched.size())));
+        publish();
+        // Offer older items first
+        for (int i = items.size() - 1; i >= 0; i--) {
+            if (items.get(i).getId() > previousLastId) {
+                notifyReceived(items.get(i));
+            }
+        }
+    }
+
+    private void fetchNew() {
+        List<StoredSms> fetched = fetch("_id > ?", new String[]{String.valueOf(lastId)}, CAPACITY);
+        if (fetched == null || fetched.isEmpty()) {
+            return;
+        }
+        StoredSms oldest = items.isEmpty() ? null : items.get(items.size() - 1);
+        for (StoredSms item : fetched) {
+            // The cache must only contain the most recent messages without gaps
+            if (isComplete || oldest == null || StoredSms.NEWEST_FIRST.compare(item, oldest) < 0) {
+                items.add(item);
+            }
+        }
+        Collections.sort(items, StoredSms.NEWEST_FIRST);
+        if (items.size() > CAPACITY) {
+            items.subList(CAPACITY, items.size()).clear();
+            isComplete = false;
+        }
+        publish();
+        for (int i = fetched.size() - 1; i >= 0; i--) {
+            notifyReceived(fetched.get(i));
+        }
+    }
+
+    private void refresh(long id) {
+        int index = -1;
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i).getId() == id) {
+                index = i;
+                break;
+            }
+        }
+        List<StoredSms> fetched = fetch("_id = ?", new String[]{String.valueOf(id)}, 1);
+        if (fetched == null) {
+            return;
+        }
+        if (fetched.isEmpty()) {
+            // The message has been deleted or moved out of the inbox
+            if (index >= 0) {
+                items.remove(index);
+                publish();
+            }
+            return;
+        }
+        if (index < 0) {
+            // An older message has been moved to the inbox
+            reload();
+            return;
+        }
+        items.set(index, fetched.get(0));
+        Collections.sort(items, StoredSms.NEWEST_FIRST);
+        publish();
+    }
+
+    private void onProviderChange(@Nullable Uri uri) {
+        long id = -1;
+        String lastSegment = uri == null ? null : uri.getLastPathSegment();
+        if (lastSegment != null) {
+            try {
+                id = Long.parseLong(lastSegment);
+            } catch (NumberFormatException e) {
+                // not a single message uri
+            }
+        }
+        if (snapshot == null || id <= 0) {
+            // Older providers do not tell which message has been changed
+            reload();
+        } else if (id > lastId) {
+            fetchNew();
+        } else {
+            refresh(id);
+        }
+    }
+
+    /**
+     * Registers the given waiter, so it gets notified about newly received messages.
+     *
+     * @param waiter the waiter to register
+     * @param since the timestamp in milliseconds to start from (inclusive). Cached messages
+     *              received after this point are offered to the waiter immediately. Zero means
+     *              only new messages are going to be offered.
+     */
+    public void addWaiter(final SmsWaiter waiter, final long since) {
+        waiters.add(waiter);
+        Handler currentHandler;
+        synchronized (this) {
+            currentHandler = handler;
+        }
+        if (since <= 0 || currentHandler == null) {
+            return;
+        }
+        // Make sure the cache has been loaded before looking through it
+        currentHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Snapshot current = snapshot;
+                if (current == null) {
+                    return;
+                }
+                List<StoredSms> cached = current.getItems();
+                // Offer older items first
+                for (int i = cached.size() - 1; i >= 0; i--) {
+                    if (cached.get(i).getDate() >= since && waiter.offer(cached.get(i))) {
+                        waiters.remove(waiter);
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    public void removeWaiter(SmsWaiter waiter) {
+        waiters.remove(waiter);
+    }
+
+    private void notifyReceived(StoredSms item) {
+        for (SmsWaiter waiter : waiters) {
+            if (waiter.offer(item)) {
+                waiters.remove(waiter);
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.sms;
+
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Criteria to select SMS messages. The same criteria could be either translated
+ * to a content provider selection or applied to already fetched messages.
+ */
+public class SmsFilter {
+    private String address = null;
+    private long since = Long.MIN_VALUE;
+    private long until = Long.MAX_VALUE;
+    private String bodyContains = null;
+    private Pattern extract = null;
+
+    public SmsFilter setAddress(@Nullable String address) {
+        this.address = address;
+        return this;
+    }
+
+    public SmsFilter setSince(long since) {
+        this.since = since;
+        return this;
+    }
+
+    public SmsFilter setUntil(long until) {
+        this.until = until;
+        return this;
+    }
+
+    public SmsFilter setBodyContains(@Nullable String bodyContains) {
+        this.bodyContains = bodyContains;
+        return this;
+    }
+
+    public SmsFilter setExtract(@Nullable Pattern extract) {
+        this.extract = extract;
+        return this;
+    }
+
+    public boolean hasExtract() {
+        return extract != null;
+    }
+
+    private static String escapeLikePattern(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * @param clauses the list to add selection clauses to
+     * @param args the list to add selection arguments to
+     */
+    public void addSelection(List<String> clauses, List<String> args) {
+        if (address != null) {
+            clauses.add("address = ?");
+            args.add(address);
+        }
+        if (since != Long.MIN_VALUE) {
+            clauses.add("date >= ?");
+            args.add(String.valueOf(since));
+        }
+        if (until != Long.MAX_VALUE) {
+            clauses.add("date <= ?");
+            args.add(String.valueOf(until));
+        }
+        if (bodyContains != null) {
+            clauses.add("body LIKE ? ESCAPE '\\'");
+            args.add("%" + escapeLikePattern(bodyContains) + "%");
+        }
+    }
+
+    /**
+     * @return the provider selection matching the filter or null if all messages match
+     */
+    @Nullable
+    public String getSelection() {
+        List<String> clauses = new ArrayList<>();
+        addSelection(clauses, new ArrayList<String>());
+        return clauses.isEmpty() ? null : TextUtils.join(" AND ", clauses);
+    }
+
+    /**
+     * @return the arguments of the selection returned by {@link #getSelection()}
+     */
+    @Nullable
+    public String[] getSelectionArgs() {
+        List<String> args = new ArrayList<>();
+        addSelection(new ArrayList<String>(), args);
+        return args.isEmpty() ? null : args.toArray(new String[0]);
+    }
+
+    /**
+     * Applies the same criteria as the provider selection does. The extraction
+     * pattern is not taken into account.
+     *
+     * @param item the message to check
+     * @return true if the message matches
+     */
+    public boolean matches(StoredSms item) {
+        if (address != null && !address.equals(item.getAddress())) {
+            return false;
+        }
+        if (item.getDate() < since || item.getDate() > until) {
+            return false;
+        }
+        if (bodyContains != null) {
+            // SQLite LIKE operator is case-insensitive
+            String body = item.getBody();
+            return body != null
+                    && body.toLowerCase(Locale.ROOT).contains(bodyContains.toLowerCase(Locale.ROOT));
+        }
+        return true;
+    }
+
+    /**
+     * @param item the message to extract the text from
+     * @return the value of the first capturing group of the extraction pattern, or the whole match
+     * if the pattern has no groups. Null is returned if the message body does not match.
+     */
+    @Nullable
+    public String extract(StoredSms item) {
+        String body = item.getBody();
+        if (extract == null || body == null) {
+            return null;
+        }
+        Matcher matcher = extract.matcher(body);
+        if (!matcher.find()) {
+            return null;
+        }
+        return matcher.group(matcher.groupCount() > 0 ? 1 : 0);
+    }
+}
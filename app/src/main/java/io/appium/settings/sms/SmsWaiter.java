@@ -0,0 +1,61 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.sms;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Waits for the first received SMS message matching the given filter.
+ * The callback is invoked at most once, and never after the waiter has been cancelled.
+ */
+public class SmsWaiter {
+    public interface Callback {
+        void onMatch(StoredSms item);
+    }
+
+    private final SmsFilter filter;
+    private final Callback callback;
+    private final AtomicBoolean isDone = new AtomicBoolean(false);
+
+    public SmsWaiter(SmsFilter filter, Callback callback) {
+        this.filter = filter;
+        this.callback = callback;
+    }
+
+    /**
+     * @param item the candidate message
+     * @return true if the waiter is done, e.g. the given item matches or the waiter has been cancelled before
+     */
+    boolean offer(StoredSms item) {
+        if (isDone.get()) {
+            return true;
+        }
+        boolean isMatch = filter.matches(item) && (!filter.hasExtract() || filter.extract(item) != null);
+        if (!isMatch || !isDone.compareAndSet(false, true)) {
+            return isDone.get();
+        }
+        callback.onMatch(item);
+        return true;
+    }
+
+    /**
+     * @return true if the waiter has been cancelled or false if it is already done
+     */
+    public boolean cancel() {
+        return isDone.compareAndSet(false, true);
+    }
+}
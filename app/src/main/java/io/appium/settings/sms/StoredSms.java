@@ -0,0 +1,233 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.sms;
+
+import android.database.Cursor;
+import android.support.annotation.Nullable;
+import io.appium.settings.helpers.JsonResponseWriter;
+import org.json.JSONObject;
+
+import java.util.Comparator;
+
+/**
+ * Immutable copy of a single SMS provider row.
+ */
+public class StoredSms {
+    private static final SmsColumn[] SMS_COLUMNS = new SmsColumn[]{
+            new SmsColumn("_id", "id", true),
+            new SmsColumn("address", "address", false),
+            new SmsColumn("person", "person", false),
+            new SmsColumn("date", "date", true),
+            new SmsColumn("read", "read", true),
+            new SmsColumn("status", "status", true),
+            new SmsColumn("type", "type", true),
+            new SmsColumn("subject", "subject", false),
+            new SmsColumn("body", "body", false),
+            new SmsColumn("service_center", "serviceCenter", false)
+    };
+    private static final int ID_COLUMN = 0;
+    private static final int ADDRESS_COLUMN = 1;
+    private static final int DATE_COLUMN = 3;
+    private static final int BODY_COLUMN = 8;
+    public static final String[] PROJECTION = new String[SMS_COLUMNS.length];
+
+    static {
+        for (int i = 0; i < SMS_COLUMNS.length; i++) {
+            PROJECTION[i] = SMS_COLUMNS[i].name;
+        }
+    }
+
+    /**
+     * Orders messages the same way the SMS reader lists them, e.g. the most recent one goes first
+     */
+    public static final Comparator<StoredSms> NEWEST_FIRST = new Comparator<StoredSms>() {
+        @Override
+        public int compare(StoredSms o1, StoredSms o2) {
+            if (o1.date != o2.date) {
+                return o1.date > o2.date ? -1 : 1;
+            }
+            return o1.id == o2.id ? 0 : (o1.id > o2.id ? -1 : 1);
+        }
+    };
+
+    /**
+     * Numeric columns are read and kept as numbers, so messages could be compared without parsing,
+     * but all the values are written to JSON as strings, like the SMS provider returns them
+     */
+    private static class SmsColumn {
+        final String name;
+        final String jsonName;
+        final boolean isNumeric;
+
+        SmsColumn(String name, String jsonName, boolean isNumeric) {
+            this.name = name;
+            this.jsonName = jsonName;
+            this.isNumeric = isNumeric;
+        }
+    }
+
+    // Column values in the order of SMS_COLUMNS. Null stands for a missing column.
+    private final Object[] values;
+    private final long id;
+    private final long date;
+
+    private StoredSms(Object[] values) {
+        this.values = values;
+        this.id = values[ID_COLUMN] instanceof Long ? (Long) values[ID_COLUMN] : 0;
+        this.date = values[DATE_COLUMN] instanceof Long ? (Long) values[DATE_COLUMN] : 0;
+    }
+
+    /**
+     * Resolves the indexes of the known columns, so they are not looked up for each row.
+     *
+     * @param cursor the cursor to resolve indexes for
+     * @return the column indexes to pass to {@link #fromCursor(Cursor, int[])}
+     */
+    public static int[] getColumnIndexes(Cursor cursor) {
+        int[] columnIndexes = new int[SMS_COLUMNS.length];
+        for (int i = 0; i < SMS_COLUMNS.length; i++) {
+            columnIndexes[i] = cursor.getColumnIndex(SMS_COLUMNS[i].name);
+        }
+        return columnIndexes;
+    }
+
+    /**
+     * @param cursor the cursor pointing to the row to copy
+     * @param columnIndexes the indexes returned by {@link #getColumnIndexes(Cursor)}
+     * @return the copy of the current cursor row
+     */
+    public static StoredSms fromCursor(Cursor cursor, int[] columnIndexes) {
+        Object[] values = new Object[SMS_COLUMNS.length];
+        for (int i = 0; i < SMS_COLUMNS.length; i++) {
+            int columnIndex = columnIndexes[i];
+            if (columnIndex < 0) {
+                continue;
+            }
+            if (cursor.isNull(columnIndex)) {
+                values[i] = JSONObject.NULL;
+            } else if (SMS_COLUMNS[i].isNumeric) {
+                values[i] = cursor.getLong(columnIndex);
+            } else {
+                values[i] = cursor.getString(columnIndex);
+            }
+        }
+        return new StoredSms(values);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getDate() {
+        return date;
+    }
+
+    @Nullable
+    private String getString(int column) {
+        return values[column] instanceof String ? (String) values[column] : null;
+    }
+
+    @Nullable
+    public String getAddress() {
+        return getString(ADDRESS_COLUMN);
+    }
+
+    @Nullable
+    public String getBody() {
+        return getString(BODY_COLUMN);
+    }
+
+    /**
+     * @return the token to request the page of messages following this one
+     */
+    public String getPageToken() {
+        return date + ":" + id;
+    }
+
+    /**
+     * @param date the date of the page token
+     * @param id the id of the page token
+     * @return true if this message is listed after the one identified by the given page token
+     */
+    public boolean isAfter(long date, long id) {
+        return this.date < date || (this.date == date && this.id < id);
+    }
+
+    /**
+     * @return values of {@link #PROJECTION} columns as they are returned by the SMS provider
+     */
+    public Object[] toTableRow() {
+        Object[] row = new Object[SMS_COLUMNS.length];
+        for (int i = 0; i < SMS_COLUMNS.length; i++) {
+            row[i] = values[i] == JSONObject.NULL ? null : values[i];
+        }
+        return row;
+    }
+
+    public void writeTo(JsonResponseWriter writer) {
+        writer.beginObject();
+        for (int i = 0; i < SMS_COLUMNS.length; i++) {
+            if (values[i] instanceof Long) {
+                writer.name(SMS_COLUMNS[i].jsonName).quotedValue((Long) values[i]);
+            } else if (values[i] != null) {
+                writer.name(SMS_COLUMNS[i].jsonName).value(values[i]);
+            }
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Writes the shortened representation of the message containing the extracted text.
+     *
+     * @param writer the writer to write the object to
+     * @param match the text extracted from the message body
+     */
+    public void writeTo(JsonResponseWriter writer, @Nullable String match) {
+        writer.beginObject()
+                .name("id").quotedValue(id)
+                .name("address").value(getAddress())
+                .name("date").quotedValue(date)
+                .name("match").value(match)
+                .endObject();
+    }
+
+    /**
+     * Writes the current cursor row without copying it.
+     *
+     * @param cursor the cursor pointing to the row to write
+     * @param columnIndexes the indexes returned by {@link #getColumnIndexes(Cursor)}
+     * @param writer the writer to write the object to
+     */
+    public static void writeRow(Cursor cursor, int[] columnIndexes, JsonResponseWriter writer) {
+        writer.beginObject();
+        for (int i = 0; i < SMS_COLUMNS.length; i++) {
+            int columnIndex = columnIndexes[i];
+            if (columnIndex < 0) {
+                continue;
+            }
+            writer.name(SMS_COLUMNS[i].jsonName);
+            if (cursor.isNull(columnIndex)) {
+                writer.nullValue();
+            } else if (SMS_COLUMNS[i].isNumeric) {
+                writer.quotedValue(cursor.getLong(columnIndex));
+            } else {
+                writer.value(cursor.getString(columnIndex));
+            }
+        }
+        writer.endObject();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.provider.Settings;
+import io.appium.settings.receivers.NotificationsReceiver;
+import io.appium.settings.sms.FakeSmsProvider;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Responses are streamed to writers directly, since pipes cannot be created in JVM tests.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DataProviderTest {
+    private static final String ENABLED_NOTIFICATION_LISTENERS = "enabled_notification_listeners";
+
+    /**
+     * Counts the chunks of the response passed to the sink.
+     */
+    private static class RecordingWriter extends StringWriter {
+        int writesCount = 0;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            writesCount++;
+            super.write(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String value, int offset, int length) {
+            writesCount++;
+            super.write(value, offset, length);
+        }
+    }
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        FakeSmsProvider.ROWS.clear();
+        Robolectric.setupContentProvider(FakeSmsProvider.class, "sms");
+        context = RuntimeEnvironment.application;
+    }
+
+    private DataProvider.ResponseStreamer createStreamer(int match, String uri) {
+        return new DataProvider.ResponseStreamer(context, match, DataProvider.toRequest(Uri.parse(uri)), null);
+    }
+
+    private void grantNotificationAccess() {
+        Settings.Secure.putString(context.getContentResolver(), ENABLED_NOTIFICATION_LISTENERS,
+                context.getPackageName() + "/" + NLService.class.getName());
+    }
+
+    @Test
+    public void queryParametersArePassedAsExtras() {
+        Intent request = DataProvider.toRequest(
+                Uri.parse("content://io.appium.settings.data/sms?max=2&address=%2B123456789"));
+        assertEquals("2", request.getStringExtra("max"));
+        assertEquals("+123456789", request.getStringExtra("address"));
+    }
+
+    @Test
+    public void smsAreStreamedWhileTheResponseIsBuilt() throws Exception {
+        for (long id = 1; id <= 500; id++) {
+            FakeSmsProvider.ROWS.add(FakeSmsProvider.row(id));
+        }
+        RecordingWriter sink = new RecordingWriter();
+        assertNull(createStreamer(DataProvider.SMS, "content://io.appium.settings.data/sms?max=400").stream(sink));
+        JSONArray items = new JSONObject(sink.toString()).getJSONArray("items");
+        assertEquals(400, items.length());
+        assertEquals("500", items.getJSONObject(0).getString("id"));
+        assertEquals("Message 500", items.getJSONObject(0).getString("body"));
+        // The response is passed to the sink in chunks instead of being accumulated in memory
+        assertTrue(sink.writesCount > 1);
+    }
+
+    @Test
+    public void invalidRequestIsReportedToTheReader() {
+        String error = createStreamer(DataProvider.SMS, "content://io.appium.settings.data/sms?since=yesterday")
+                .stream(new StringWriter());
+        assertNotNull(error);
+        assertTrue(error.contains("since"));
+    }
+
+    @Test
+    public void notificationsRequireTheListenerAccess() {
+        String error = createStreamer(DataProvider.NOTIFICATIONS, "content://io.appium.settings.data/notifications")
+                .stream(new StringWriter());
+        assertEquals(NotificationsReceiver.NO_ACCESS_ERROR, error);
+    }
+
+    @Test
+    public void notificationsAreStreamed() throws Exception {
+        grantNotificationAccess();
+        StringWriter sink = new StringWriter();
+        assertNull(createStreamer(DataProvider.NOTIFICATIONS, "content://io.appium.settings.data/notifications")
+                .stream(sink));
+        JSONObject response = new JSONObject(sink.toString());
+        assertEquals(0, response.getJSONArray("statusBarNotifications").length());
+        assertTrue(response.has("sequence"));
+        assertTrue(response.has("buffer"));
+    }
+
+    @Test
+    public void closedReaderIsNotReportedAsAnError() {
+        FakeSmsProvider.ROWS.add(FakeSmsProvider.row(1));
+        Writer sink = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        assertNull(createStreamer(DataProvider.SMS, "content://io.appium.settings.data/sms").stream(sink));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void responsesCouldOnlyBeRead() throws FileNotFoundException {
+        new DataProvider().openFile(Uri.parse("content://io.appium.settings.data/sms"), "w");
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void onlyNotificationsAndSmsAreStreamed() throws FileNotFoundException {
+        new DataProvider().openFile(Uri.parse("content://io.appium.settings.data/location"), "r");
+    }
+}
@@ -0,0 +1,97 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.helpers;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class InMemoryTableTest {
+    private static final String[] COLUMNS = new String[]{"name", "count", "ratio", "note"};
+    private static final List<Object[]> ROWS = Arrays.asList(
+            new Object[]{"alpha", 3, 0.5, null},
+            new Object[]{"beta", 10, 1.5f, "b"},
+            new Object[]{"gamma", 2L, 2.0, "g"}
+    );
+
+    @Test
+    public void allRowsAreReturnedWithoutArguments() {
+        Cursor cursor = InMemoryTable.query(COLUMNS, ROWS, null, null, null, null);
+        try {
+            assertEquals(3, cursor.getCount());
+            assertEquals(Arrays.asList(COLUMNS), Arrays.asList(cursor.getColumnNames()));
+            assertTrue(cursor.moveToFirst());
+            assertEquals("alpha", cursor.getString(0));
+            assertEquals(Cursor.FIELD_TYPE_INTEGER, cursor.getType(1));
+            assertEquals(Cursor.FIELD_TYPE_FLOAT, cursor.getType(2));
+            assertTrue(cursor.isNull(3));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void numbersAreComparedNumerically() {
+        Cursor cursor = InMemoryTable.query(COLUMNS, ROWS, new String[]{"name"},
+                "count > ?", new String[]{"2"}, "count DESC");
+        try {
+            assertEquals(2, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals("beta", cursor.getString(0));
+            cursor.moveToNext();
+            assertEquals("alpha", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void selectionAndSortOrderAcceptSqliteSyntax() {
+        Cursor cursor = InMemoryTable.query(COLUMNS, ROWS, new String[]{"name", "note"},
+                "name LIKE 'A%' OR note IS NOT NULL", null, "ratio DESC LIMIT 2");
+        try {
+            assertEquals(2, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals("gamma", cursor.getString(0));
+            cursor.moveToNext();
+            assertEquals("beta", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void unknownColumnsAreRejected() {
+        try {
+            InMemoryTable.query(COLUMNS, ROWS, null, "missing = 1", null, null).close();
+            fail("The query must fail");
+        } catch (SQLiteException e) {
+            assertTrue(e.getMessage().contains("missing"));
+        }
+    }
+}
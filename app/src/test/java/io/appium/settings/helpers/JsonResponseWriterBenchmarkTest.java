@@ -0,0 +1,177 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.helpers;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares building a response as an org.json object tree with writing it through
+ * {@link JsonResponseWriter}. The rows mimic SMS messages as they are read from a cursor.
+ * Timings are only written to the report, since they depend on the machine, but the writer
+ * must always allocate less than the object tree.
+ * The benchmark is skipped unless the tests are run with -Pbenchmarks, in which case the report
+ * is written to build/reports/benchmarks.
+ */
+public class JsonResponseWriterBenchmarkTest {
+    private static final String[] COLUMNS = new String[]{
+            "_id", "address", "person", "date", "read", "status", "type", "subject", "body", "service_center"
+    };
+    private static final int[] SIZES = new int[]{100, 1000, 10000};
+    // Each measurement processes about this many rows, so small sizes get more iterations
+    private static final int ROWS_PER_MEASUREMENT = 200000;
+    private static final int ESTIMATED_ROW_LENGTH = 256;
+    private static final String REPORT_DIR_PROPERTY = "benchmarks.reportDir";
+
+    private static String[][] createRows(int count) {
+        String[][] rows = new String[count][];
+        for (int i = 0; i < count; i++) {
+            rows[i] = new String[]{
+                    String.valueOf(count - i), "+1555000" + (i % 100), null,
+                    String.valueOf(1600000000000L + i * 60000L), String.valueOf(i % 2), "-1", "1", null,
+                    "Your verification code is " + (100000 + i) + ". Do not share it with anyone.",
+                    "+15550001000"
+            };
+        }
+        return rows;
+    }
+
+    private static String buildWithObjectTree(String[][] rows) throws Exception {
+        JSONArray items = new JSONArray();
+        for (String[] row : rows) {
+            JSONObject item = new JSONObject();
+            for (int i = 0; i < COLUMNS.length; i++) {
+                item.put(COLUMNS[i], row[i] == null ? JSONObject.NULL : row[i]);
+            }
+            items.put(item);
+        }
+        JSONObject result = new JSONObject();
+        result.put("items", items);
+        result.put("total", rows.length);
+        return result.toString();
+    }
+
+    private static String buildWithWriter(String[][] rows) {
+        JsonResponseWriter writer = new JsonResponseWriter(64 + rows.length * ESTIMATED_ROW_LENGTH);
+        writer.beginObject().name("items").beginArray();
+        for (String[] row : rows) {
+            writer.beginObject();
+            for (int i = 0; i < COLUMNS.length; i++) {
+                writer.name(COLUMNS[i]).value(row[i]);
+            }
+            writer.endObject();
+        }
+        return writer.endArray().name("total").value(rows.length).endObject().toString();
+    }
+
+    private interface Builder {
+        String build(String[][] rows) throws Exception;
+    }
+
+    private static class Measurement {
+        long nanosPerBuild;
+        long bytesPerBuild;
+    }
+
+    private static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static Measurement measure(Builder builder, String[][] rows) throws Exception {
+        int iterations = Math.max(1, ROWS_PER_MEASUREMENT / rows.length);
+        int checksum = 0;
+        // Warm up
+        for (int i = 0; i < iterations; i++) {
+            checksum += builder.build(rows).length();
+        }
+        long startBytes = getAllocatedBytes();
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            checksum += builder.build(rows).length();
+        }
+        Measurement result = new Measurement();
+        result.nanosPerBuild = (System.nanoTime() - startNanos) / iterations;
+        result.bytesPerBuild = startBytes < 0 ? -1 : (getAllocatedBytes() - startBytes) / iterations;
+        assertTrue(checksum > 0);
+        return result;
+    }
+
+    @Test
+    public void writerIsCheaperThanObjectTree() throws Exception {
+        String reportDir = System.getProperty(REPORT_DIR_PROPERTY);
+        assumeTrue("Benchmarks are only run with -Pbenchmarks", reportDir != null);
+        Builder objectTree = new Builder() {
+            @Override
+            public String build(String[][] rows) throws Exception {
+                return buildWithObjectTree(rows);
+            }
+        };
+        Builder writer = new Builder() {
+            @Override
+            public String build(String[][] rows) {
+                return buildWithWriter(rows);
+            }
+        };
+        PrintWriter report = openReport(new File(reportDir, "JsonResponseWriter.txt"));
+        try {
+            report.println(String.format(Locale.ROOT, "%8s %16s %16s %16s %16s",
+                    "items", "tree us", "writer us", "tree KB", "writer KB"));
+            for (int size : SIZES) {
+                String[][] rows = createRows(size);
+                // Both paths must produce the same document
+                assertEquals(buildWithObjectTree(rows), new JSONObject(buildWithWriter(rows)).toString());
+
+                Measurement treeResult = measure(objectTree, rows);
+                Measurement writerResult = measure(writer, rows);
+                report.println(String.format(Locale.ROOT, "%8d %16d %16d %16d %16d", size,
+                        treeResult.nanosPerBuild / 1000, writerResult.nanosPerBuild / 1000,
+                        treeResult.bytesPerBuild / 1024, writerResult.bytesPerBuild / 1024));
+                if (writerResult.bytesPerBuild >= 0) {
+                    assertTrue(String.format("%s items: the writer has allocated %s bytes, the object tree %s bytes",
+                            size, writerResult.bytesPerBuild, treeResult.bytesPerBuild),
+                            writerResult.bytesPerBuild < treeResult.bytesPerBuild);
+                }
+            }
+        } finally {
+            report.close();
+        }
+    }
+
+    private static PrintWriter openReport(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException(String.format("Cannot create the report folder '%s'", dir));
+        }
+        return new PrintWriter(new FileWriter(file));
+    }
+}
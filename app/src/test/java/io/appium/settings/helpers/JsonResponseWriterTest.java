@@ -0,0 +1,164 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.helpers;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonResponseWriterTest {
+    private static final int DRAIN_THRESHOLD = 8192;
+
+    @Test
+    public void nestedContainersAreSeparated() {
+        JsonResponseWriter writer = new JsonResponseWriter()
+                .beginObject()
+                .name("items").beginArray()
+                .beginObject().name("id").value(1).name("read").value(false).endObject()
+                .beginObject().name("id").value(2).name("tags").beginArray().endArray().endObject()
+                .endArray()
+                .name("next").nullValue()
+                .name("raw").rawValue("{\"a\":[1,2]}")
+                .name("ratio").value(0.25)
+                .name("count").value(3.0)
+                .endObject();
+        assertEquals("{\"items\":[{\"id\":1,\"read\":false},{\"id\":2,\"tags\":[]}],"
+                + "\"next\":null,\"raw\":{\"a\":[1,2]},\"ratio\":0.25,\"count\":3}", writer.toString());
+    }
+
+    @Test
+    public void stringsAreEscapedLikeOrgJson() {
+        JsonResponseWriter writer = new JsonResponseWriter()
+                .beginArray()
+                .value("quote \" backslash \\ slash /")
+                .value("tab\t newline\n return\r backspace\b feed\f")
+                .value("control \u0001\u001f")
+                .value("unicode \u0436 \u2028 \ud83d\ude00")
+                .value((String) null)
+                .endArray();
+        assertEquals("[\"quote \\\" backslash \\\\ slash \\/\","
+                + "\"tab\\t newline\\n return\\r backspace\\b feed\\f\","
+                + "\"control \\u0001\\u001f\","
+                + "\"unicode \u0436 \u2028 \ud83d\ude00\","
+                + "null]", writer.toString());
+    }
+
+    @Test
+    public void objectValuesAreWrittenByType() {
+        JsonResponseWriter writer = new JsonResponseWriter()
+                .beginArray()
+                .value((Object) "text")
+                .value((Object) 42)
+                .value((Object) 7L)
+                .value((Object) 1.5f)
+                .value((Object) true)
+                .value((Object) null)
+                .endArray();
+        assertEquals("[\"text\",42,7,1.5,true,null]", writer.toString());
+    }
+
+    @Test
+    public void quotedNumbersAreWrittenAsStrings() {
+        JsonResponseWriter writer = new JsonResponseWriter()
+                .beginObject()
+                .name("id").quotedValue(2)
+                .name("status").quotedValue(-1)
+                .name("date").quotedValue(1581936422203L)
+                .endObject();
+        assertEquals("{\"id\":\"2\",\"status\":\"-1\",\"date\":\"1581936422203\"}", writer.toString());
+    }
+
+    @Test
+    public void infiniteNumbersAreRejected() {
+        double[] invalid = new double[]{Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (double value : invalid) {
+            try {
+                new JsonResponseWriter().value(value);
+                fail(String.format("%s must be rejected", value));
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void bufferIsDrainedAfterEveryValue() throws IOException {
+        StringWriter sink = new StringWriter();
+        JsonResponseWriter writer = new JsonResponseWriter(sink);
+        JsonResponseWriter expected = new JsonResponseWriter();
+        String raw = "{\"text\":\"" + new String(new char[3 * DRAIN_THRESHOLD]).replace('\0', 'x') + "\"}";
+        writer.beginArray();
+        expected.beginArray();
+        for (int i = 0; i < 10000; i++) {
+            writer.value("item " + i).value(i).rawValue("{\"n\":1}");
+            expected.value("item " + i).value(i).rawValue("{\"n\":1}");
+            // Values are written to the sink as soon as the buffer is full, not only when containers end
+            assertTrue(String.valueOf(writer.length()), writer.length() < DRAIN_THRESHOLD + 64);
+        }
+        writer.rawValue(raw);
+        expected.rawValue(raw);
+        assertEquals(0, writer.length());
+        writer.endArray();
+        expected.endArray();
+        writer.flush();
+        assertFalse(writer.checkError());
+        assertEquals(expected.toString(), sink.toString());
+    }
+
+    @Test
+    public void sinkErrorsAreReportedOnFlush() {
+        Writer sink = new Writer() {
+            @Override
+            public void write(char[] chars, int offset, int length) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        JsonResponseWriter writer = new JsonResponseWriter(sink);
+        writer.beginArray();
+        for (int i = 0; i < 1000; i++) {
+            writer.value("a value long enough to fill the buffer quickly");
+        }
+        assertTrue(writer.checkError());
+        writer.endArray();
+        try {
+            writer.flush();
+            fail("The sink error must be reported");
+        } catch (IOException e) {
+            assertEquals("Broken pipe", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void writerWithoutSinkCannotBeFlushed() throws IOException {
+        new JsonResponseWriter().flush();
+    }
+}
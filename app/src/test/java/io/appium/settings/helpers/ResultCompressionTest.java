@@ -0,0 +1,165 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.helpers;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Bundle;
+import android.os.Looper;
+import android.util.Base64;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Results could only be set during ordered broadcasts, so the data is passed through a real one.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ResultCompressionTest {
+    private static final String ACTION = "io.appium.settings.test.compress";
+
+    private static class Sender extends BroadcastReceiver {
+        private final Object data;
+
+        Sender(Object data) {
+            this.data = data;
+        }
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (data instanceof String) {
+                ResultCompression.setResult(this, Activity.RESULT_OK, (String) data);
+            } else {
+                ResultCompression.setResult(this, Activity.RESULT_OK, (byte[]) data);
+            }
+        }
+    }
+
+    private static class Result extends BroadcastReceiver {
+        int code;
+        String data;
+        Bundle extras;
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            code = getResultCode();
+            data = getResultData();
+            extras = getResultExtras(false);
+        }
+    }
+
+    private static Result send(Object data) {
+        Context context = RuntimeEnvironment.application;
+        Sender sender = new Sender(data);
+        context.registerReceiver(sender, new IntentFilter(ACTION));
+        try {
+            Result result = new Result();
+            context.sendOrderedBroadcast(new Intent(ACTION), null, result, null, Activity.RESULT_CANCELED,
+                    null, null);
+            shadowOf(Looper.getMainLooper()).idle();
+            return result;
+        } finally {
+            context.unregisterReceiver(sender);
+        }
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(data));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+            }
+        } finally {
+            input.close();
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] decode(Result result) throws IOException {
+        assertEquals(Activity.RESULT_OK, result.code);
+        assertNotNull(result.extras);
+        assertEquals("gzip", result.extras.getString("encoding"));
+        byte[] compressed = Base64.decode(result.data, Base64.NO_WRAP);
+        assertEquals(compressed.length, result.extras.getInt("compressedSize"));
+        byte[] raw = gunzip(compressed);
+        assertEquals(raw.length, result.extras.getInt("rawSize"));
+        return raw;
+    }
+
+    private static Intent createRequest(String compression) {
+        return new Intent(ACTION).putExtra("compress", compression);
+    }
+
+    @Test
+    public void compressionIsOnlyRequestedExplicitly() {
+        assertFalse(ResultCompression.isRequested(new Intent(ACTION)));
+        assertFalse(ResultCompression.isRequested(createRequest("")));
+        assertTrue(ResultCompression.isRequested(createRequest("gzip")));
+        assertTrue(ResultCompression.isRequested(createRequest("GZIP")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedCompressionIsRejected() {
+        ResultCompression.isRequested(createRequest("deflate"));
+    }
+
+    @Test
+    public void textIsRestoredAfterTheCompression() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("{\"id\":\"").append(i)
+                    .append("\",\"body\":\"\u041f\u0440\u0438\u0432\u0456\u0442 \u4e16\u754c \ud83d\ude00\"},");
+        }
+        Result result = send(text.toString());
+        assertEquals(text.toString(), new String(decode(result), "UTF-8"));
+        assertTrue(result.extras.getInt("compressedSize") < result.extras.getInt("rawSize"));
+    }
+
+    @Test
+    public void bytesAreRestoredAfterTheCompression() throws IOException {
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 % 251);
+        }
+        assertArrayEquals(data, decode(send(data)));
+    }
+
+    @Test
+    public void emptyResultIsCompressed() throws IOException {
+        assertEquals(0, decode(send("")).length);
+    }
+}
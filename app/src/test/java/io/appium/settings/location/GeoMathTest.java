@@ -0,0 +1,89 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.location;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class GeoMathTest {
+    private static final double METERS_PER_DEGREE = 6371008.8 * Math.PI / 180;
+
+    @Test
+    public void distanceFollowsTheGreatCircle() {
+        assertEquals(METERS_PER_DEGREE, GeoMath.getDistance(0, 0, 1, 0), 1e-6);
+        assertEquals(METERS_PER_DEGREE, GeoMath.getDistance(0, 0, 0, 1), 1e-6);
+        assertEquals(2 * METERS_PER_DEGREE, GeoMath.getDistance(0, 179, 0, -179), 1e-6);
+        assertEquals(0, GeoMath.getDistance(50.45, 30.52, 50.45, 30.52), 1e-9);
+        assertEquals(90 * METERS_PER_DEGREE, GeoMath.getDistance(0, 30, 90, 0), 1e-6);
+    }
+
+    @Test
+    public void bearingIsMeasuredClockwiseFromTheNorth() {
+        assertEquals(0, GeoMath.getBearing(0, 0, 1, 0), 1e-9);
+        assertEquals(90, GeoMath.getBearing(0, 0, 0, 1), 1e-9);
+        assertEquals(180, GeoMath.getBearing(0, 0, -1, 0), 1e-9);
+        assertEquals(270, GeoMath.getBearing(0, 0, 0, -1), 1e-9);
+        assertEquals(90, GeoMath.getBearing(0, 179, 0, -179), 1e-9);
+    }
+
+    @Test
+    public void interpolationStaysOnTheGreatCircle() {
+        double[] point = new double[2];
+        GeoMath.interpolate(0, 0, 0, 90, 0.5, point);
+        assertEquals(0, point[0], 1e-9);
+        assertEquals(45, point[1], 1e-9);
+
+        GeoMath.interpolate(0, 170, 0, -170, 0.5, point);
+        assertEquals(0, point[0], 1e-9);
+        assertEquals(180, Math.abs(point[1]), 1e-9);
+
+        GeoMath.interpolate(10, 20, 30, 40, 0, point);
+        assertEquals(10, point[0], 1e-9);
+        assertEquals(20, point[1], 1e-9);
+        GeoMath.interpolate(10, 20, 30, 40, 1, point);
+        assertEquals(30, point[0], 1e-9);
+        assertEquals(40, point[1], 1e-9);
+
+        // The north pole is on the way between opposite meridians
+        GeoMath.interpolate(80, 0, 80, 180, 0.5, point);
+        assertEquals(90, point[0], 1e-9);
+    }
+
+    @Test
+    public void closePointsAreInterpolatedLinearly() {
+        double[] point = new double[2];
+        GeoMath.interpolate(50.45, 30.52, 50.45, 30.52, 0.5, point);
+        assertEquals(50.45, point[0], 1e-12);
+        assertEquals(30.52, point[1], 1e-12);
+    }
+
+    @Test
+    public void coordinatesOutOfRangeAreRejected() {
+        GeoMath.validateCoordinates(-90, 180);
+        double[][] invalid = new double[][]{{90.5, 0}, {-91, 0}, {0, 180.5}, {0, -181}, {Double.NaN, 0}, {0, Double.NaN}};
+        for (double[] coordinates : invalid) {
+            try {
+                GeoMath.validateCoordinates(coordinates[0], coordinates[1]);
+                fail(String.format("%s, %s must be rejected", coordinates[0], coordinates[1]));
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
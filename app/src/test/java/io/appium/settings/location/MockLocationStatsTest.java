@@ -0,0 +1,99 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.location;
+
+import io.appium.settings.helpers.JsonResponseWriter;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class MockLocationStatsTest {
+    private static long micros(long value) {
+        return TimeUnit.MICROSECONDS.toNanos(value);
+    }
+
+    @Test
+    public void providerStatsContainLatencyPercentilesAndFailures() {
+        MockLocationStats.ProviderStats stats = new MockLocationStats.ProviderStats("gps");
+        stats.recordSuccess(micros(1000));
+        stats.recordSuccess(micros(3000));
+        stats.recordFailure(micros(2000), new IllegalStateException("Cannot set the mock location",
+                new SecurityException("Not allowed")));
+        stats.recordSkipped();
+
+        JsonResponseWriter writer = new JsonResponseWriter();
+        stats.write(writer);
+        assertEquals("{\"name\":\"gps\",\"calls\":3,\"failures\":1,\"skipped\":1,"
+                        + "\"lastError\":\"java.lang.IllegalStateException: Cannot set the mock location: "
+                        + "java.lang.SecurityException: Not allowed\","
+                        + "\"latencyUs\":{\"mean\":2000,\"p50\":2000,\"p90\":3000,\"p99\":3000,\"max\":3000}}",
+                writer.toString());
+    }
+
+    @Test
+    public void providerStatsWithoutCallsHaveNoLatency() {
+        JsonResponseWriter writer = new JsonResponseWriter();
+        new MockLocationStats.ProviderStats("fused").write(writer);
+        assertEquals("{\"name\":\"fused\",\"calls\":0,\"failures\":0,\"skipped\":0,"
+                + "\"lastError\":null,\"latencyUs\":null}", writer.toString());
+    }
+
+    @Test
+    public void percentilesAreComputedOverRecentUpdates() {
+        MockLocationStats stats = MockLocationStats.getInstance();
+        stats.start(100);
+        try {
+            for (int i = 1; i <= 2000; i++) {
+                stats.recordUpdate(micros(i));
+            }
+            stats.recordMissedDeadline();
+
+            JsonResponseWriter writer = new JsonResponseWriter();
+            stats.writeSchedule(writer);
+            // Only the most recent 1024 values from 977 to 2000 are kept for percentiles
+            assertEquals("{\"running\":true,\"intervalMs\":100,\"updates\":2000,\"missedDeadlines\":1,"
+                            + "\"latenessUs\":{\"mean\":1000,\"p50\":1488,\"p90\":1898,\"p99\":1990,\"max\":2000}}",
+                    writer.toString());
+
+            stats.reset();
+            writer = new JsonResponseWriter();
+            stats.writeSchedule(writer);
+            assertEquals("{\"running\":true,\"intervalMs\":100,\"updates\":0,\"missedDeadlines\":0,"
+                    + "\"latenessUs\":null}", writer.toString());
+        } finally {
+            stats.stop();
+        }
+    }
+
+    @Test
+    public void newScheduleStartsWithEmptyStatistics() {
+        MockLocationStats stats = MockLocationStats.getInstance();
+        stats.start(2000);
+        stats.recordUpdate(micros(10));
+        stats.recordMissedDeadline();
+        stats.start(50);
+        stats.stop();
+
+        JsonResponseWriter writer = new JsonResponseWriter();
+        stats.writeSchedule(writer);
+        assertEquals("{\"running\":false,\"intervalMs\":50,\"updates\":0,\"missedDeadlines\":0,"
+                + "\"latenessUs\":null}", writer.toString());
+    }
+}
@@ -0,0 +1,196 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.location;
+
+import android.location.Location;
+import android.support.annotation.Nullable;
+
+import io.appium.settings.helpers.JsonResponseWriter;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs mock location ticks the same way LocationService does and checks that
+ * neither the scheduling thread nor the provider thread allocates once the JIT has warmed up.
+ * Framework calls are no-ops in JVM tests, so only the code of this app is measured.
+ * Also checks how calls of a busy or failing provider are recorded.
+ */
+public class ProviderUpdaterTest {
+    private static final int WARMUP_TICKS = 50000;
+    private static final int MEASURED_TICKS = 10000;
+
+    private static class RecordingProvider implements MockLocationProvider {
+        private volatile long threadId = -1;
+        private volatile int callsCount = 0;
+
+        @Override
+        public void setLocation(Location location) {
+            threadId = Thread.currentThread().getId();
+            //noinspection NonAtomicOperationOnVolatileField
+            callsCount++;
+        }
+
+        @Override
+        public void enable() {
+        }
+
+        @Override
+        public void disable() {
+        }
+
+        @Override
+        public String getProviderName() {
+            return "test";
+        }
+    }
+
+    @Nullable
+    private static com.sun.management.ThreadMXBean getThreadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean result = (com.sun.management.ThreadMXBean) bean;
+        return result.isThreadAllocatedMemorySupported() && result.isThreadAllocatedMemoryEnabled()
+                ? result
+                : null;
+    }
+
+    private static void tick(MockLocationStats stats, ProviderUpdater updater, RecordingProvider provider,
+                             int tickIndex) {
+        stats.recordUpdate(tickIndex % 1000);
+        // The provider thread might not have released the previous update yet
+        while (!updater.requestUpdate(1)) {
+            Thread.yield();
+        }
+        while (provider.callsCount <= tickIndex) {
+            Thread.yield();
+        }
+    }
+
+    private static void assertTicksDoNotAllocate(LocationFactory locationFactory) throws Exception {
+        com.sun.management.ThreadMXBean threadBean = getThreadBean();
+        assumeTrue("The JVM does not measure thread allocations", threadBean != null);
+        MockLocationStats stats = MockLocationStats.getInstance();
+        stats.start(1);
+        RecordingProvider provider = new RecordingProvider();
+        ProviderUpdater updater = new ProviderUpdater(provider, locationFactory,
+                stats.setProviders(Collections.singletonList(provider.getProviderName())).get(0));
+        updater.start();
+        try {
+            int tickIndex = 0;
+            for (; tickIndex < WARMUP_TICKS; tickIndex++) {
+                tick(stats, updater, provider, tickIndex);
+            }
+            long callerThreadId = Thread.currentThread().getId();
+            long providerThreadId = provider.threadId;
+            long callerBytes = threadBean.getThreadAllocatedBytes(callerThreadId);
+            long providerBytes = threadBean.getThreadAllocatedBytes(providerThreadId);
+            for (; tickIndex < WARMUP_TICKS + MEASURED_TICKS; tickIndex++) {
+                tick(stats, updater, provider, tickIndex);
+            }
+            callerBytes = threadBean.getThreadAllocatedBytes(callerThreadId) - callerBytes;
+            providerBytes = threadBean.getThreadAllocatedBytes(providerThreadId) - providerBytes;
+            // A constant overhead of the measurement itself is tolerated, but nothing per tick
+            assertTrue(String.format("%s bytes have been allocated by the caller in %s ticks",
+                    callerBytes, MEASURED_TICKS), callerBytes < MEASURED_TICKS);
+            assertTrue(String.format("%s bytes have been allocated by the provider thread in %s ticks",
+                    providerBytes, MEASURED_TICKS), providerBytes < MEASURED_TICKS);
+            assertEquals(WARMUP_TICKS + MEASURED_TICKS, provider.callsCount);
+        } finally {
+            updater.stop();
+            stats.stop();
+        }
+    }
+
+    @Test
+    public void staticLocationTicksDoNotAllocate() throws Exception {
+        LocationFactory locationFactory = new LocationFactory();
+        locationFactory.setLocation(50.45, 30.52, 180, 1.5f);
+        assertTicksDoNotAllocate(locationFactory);
+    }
+
+    @Test
+    public void routeTicksDoNotAllocate() throws Exception {
+        ArrayTrack track = new ArrayTrack();
+        track.add(50.45, 30.52, 180, 0);
+        track.add(50.46, 30.53, 185, 60000);
+        track.add(50.47, 30.50, 190, 120000);
+        track.complete();
+        RoutePlayer player = new RoutePlayer(track);
+        player.setLooped(true);
+        // The clock does not advance in JVM tests, so the playback position is moved explicitly
+        player.seek(30000);
+        LocationFactory locationFactory = new LocationFactory();
+        locationFactory.setRoute(player);
+        assertTicksDoNotAllocate(locationFactory);
+    }
+
+    @Test
+    public void busyProviderSkipsUpdatesAndFailuresAreRecorded() throws Exception {
+        final CountDownLatch isCalled = new CountDownLatch(1);
+        final CountDownLatch canReturn = new CountDownLatch(1);
+        MockLocationProvider provider = new RecordingProvider() {
+            @Override
+            public void setLocation(Location location) {
+                isCalled.countDown();
+                try {
+                    canReturn.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("Not accepted");
+            }
+        };
+        MockLocationStats.ProviderStats stats = MockLocationStats.getInstance()
+                .setProviders(Collections.singletonList(provider.getProviderName())).get(0);
+        LocationFactory locationFactory = new LocationFactory();
+        locationFactory.setLocation(50.45, 30.52, 180);
+        ProviderUpdater updater = new ProviderUpdater(provider, locationFactory, stats);
+        updater.start();
+        try {
+            assertTrue(updater.requestUpdate(1));
+            assertTrue(isCalled.await(10, TimeUnit.SECONDS));
+            // The previous call has not returned yet
+            assertFalse(updater.requestUpdate(1));
+            canReturn.countDown();
+            String expected = "{\"name\":\"test\",\"calls\":1,\"failures\":1,\"skipped\":1,"
+                    + "\"lastError\":\"java.lang.IllegalStateException: Not accepted\"";
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            String actual;
+            do {
+                Thread.yield();
+                JsonResponseWriter writer = new JsonResponseWriter();
+                stats.write(writer);
+                actual = writer.toString();
+            } while (!actual.startsWith(expected) && System.nanoTime() < deadline);
+            assertTrue(actual, actual.startsWith(expected));
+        } finally {
+            updater.stop();
+        }
+    }
+}
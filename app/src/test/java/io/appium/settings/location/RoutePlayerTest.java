@@ -0,0 +1,96 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.location;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The clock does not advance in JVM tests, so the playback position only changes when it is moved explicitly.
+ */
+public class RoutePlayerTest {
+    private static RoutePlayer createPlayer(boolean isComplete) {
+        ArrayTrack track = new ArrayTrack();
+        track.add(50.45, 30.52, 180, 0);
+        track.add(50.46, 30.53, 185, 60000);
+        track.add(50.47, 30.50, 190, 120000);
+        if (isComplete) {
+            track.complete();
+        }
+        return new RoutePlayer(track);
+    }
+
+    @Test
+    public void seekIsLimitedToTheTrackDuration() {
+        RoutePlayer player = createPlayer(true);
+        player.seek(30000);
+        assertEquals(30000, player.getPosition());
+        player.seek(-1);
+        assertEquals(0, player.getPosition());
+        player.seek(500000);
+        assertEquals(120000, player.getPosition());
+    }
+
+    @Test
+    public void loopedPlaybackStartsOver() {
+        RoutePlayer player = createPlayer(true);
+        player.setLooped(true);
+        player.seek(150000);
+        assertEquals(30000, player.getPosition());
+    }
+
+    @Test
+    public void incompleteTrackIsNotLooped() {
+        // The end of a track, which is still being loaded, is not known yet
+        RoutePlayer player = createPlayer(false);
+        player.setLooped(true);
+        player.seek(150000);
+        assertEquals(120000, player.getPosition());
+    }
+
+    @Test
+    public void playbackWaitsForTheRestOfAnIncompleteTrack() {
+        ArrayTrack track = new ArrayTrack();
+        track.add(50.45, 30.52, 180, 0);
+        track.add(50.46, 30.53, 185, 60000);
+        RoutePlayer player = new RoutePlayer(track);
+        assertEquals(60000, player.getPosition(100000));
+        track.add(50.47, 30.50, 190, 120000);
+        assertEquals(60000, player.getPosition(100000));
+        assertEquals(90000, player.getPosition(130000));
+        track.complete();
+        assertEquals(120000, player.getPosition(200000));
+    }
+
+    @Test
+    public void pausedPlaybackKeepsItsPosition() {
+        RoutePlayer player = createPlayer(true);
+        player.seek(45000);
+        player.pause();
+        assertTrue(player.isPaused());
+        assertEquals(45000, player.getPosition());
+        player.resume();
+        assertEquals(45000, player.getPosition());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveTimeWarpIsRejected() {
+        createPlayer(true).setTimeWarp(0);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.location;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * GPX files are parsed with the platform XML parser, so these tests run with Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TrackLoaderTest {
+    private static final long TIMEOUT_MS = 5000;
+    private static final double DELTA = 1e-6;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File createFile(String name, byte[] content) throws IOException {
+        File file = folder.newFile(name);
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content);
+        } finally {
+            output.close();
+        }
+        return file;
+    }
+
+    private File createTextFile(String name, String content) throws IOException {
+        return createFile(name, content.getBytes("UTF-8"));
+    }
+
+    private static byte[] createBinaryRoute(double[][] waypoints) {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + waypoints.length * 20).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(new byte[]{'A', 'T', 'R', 'K'}).putInt(1);
+        for (double[] waypoint : waypoints) {
+            buffer.putInt((int) Math.round(waypoint[0] * 1e7))
+                    .putInt((int) Math.round(waypoint[1] * 1e7))
+                    .putInt((int) Math.round(waypoint[2] * 100))
+                    .putLong((long) waypoint[3]);
+        }
+        return buffer.array();
+    }
+
+    private static Track load(File file, RouteFormat format, RouteTiming timing, double defaultSpeed)
+            throws Exception {
+        Track track = new TrackLoader(file, format, timing, defaultSpeed).load();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!track.isComplete()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("The track has not been loaded in time");
+            }
+            Thread.sleep(10);
+        }
+        return track;
+    }
+
+    private static void assertWaypoint(Track track, int index,
+                                       double latitude, double longitude, double altitude, long time) {
+        assertEquals(latitude, track.getLatitude(index), DELTA);
+        assertEquals(longitude, track.getLongitude(index), DELTA);
+        assertEquals(altitude, track.getAltitude(index), DELTA);
+        assertEquals(time, track.getTime(index));
+    }
+
+    @Test
+    public void csvCommentsAndHeaderAreSkipped() throws Exception {
+        File file = createTextFile("route.csv", "# exported route\n"
+                + "latitude,longitude,altitude,time\n"
+                + "50.1,8.6,100,1000\n"
+                + "\n"
+                + " 50.2, 8.7, 110, 61000 \n"
+                + "50.3,8.7,120,91000\n");
+        Track track = load(file, RouteFormat.CSV, RouteTiming.TIME, Double.NaN);
+        assertEquals(3, track.size());
+        assertWaypoint(track, 0, 50.1, 8.6, 100, 0);
+        assertWaypoint(track, 1, 50.2, 8.7, 110, 60000);
+        assertWaypoint(track, 2, 50.3, 8.7, 120, 90000);
+    }
+
+    @Test
+    public void csvWaypointsAreTravelledWithTheirSpeed() throws Exception {
+        File file = createTextFile("route.csv", "50.1,8.6,0,10\n50.2,8.7\n");
+        Track track = load(file, RouteFormat.CSV, RouteTiming.SPEED, 5);
+        assertEquals(2, track.size());
+        long expectedTime = Math.round(GeoMath.getDistance(50.1, 8.6, 50.2, 8.7) / 10 * 1000);
+        assertEquals(expectedTime, track.getTime(1));
+    }
+
+    @Test
+    public void invalidCsvLineStopsTheLoading() throws Exception {
+        File file = createTextFile("route.csv", "50.1,8.6,100,0\n50.2,8.7,110,60000\n95,8.7,120,90000\n"
+                + "50.3,8.7,120,120000\n");
+        Track track = load(file, RouteFormat.CSV, RouteTiming.TIME, Double.NaN);
+        assertEquals(2, track.size());
+    }
+
+    @Test
+    public void gpxPointsAreTimedByTheirTimestamps() throws Exception {
+        File file = createTextFile("route.gpx", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<gpx version=\"1.1\" xmlns=\"http://www.topografix.com/GPX/1/1\"><trk><trkseg>"
+                + "<trkpt lat=\"50.1\" lon=\"8.6\"><ele>100</ele><time>2024-01-31T12:00:00Z</time></trkpt>"
+                + "<trkpt lat=\"50.2\" lon=\"8.7\"><ele>110.5</ele><time>2024-01-31T12:01:00.5Z</time></trkpt>"
+                + "<trkpt lat=\"50.3\" lon=\"8.7\"><time>2024-01-31T14:01:30+02:00</time></trkpt>"
+                + "</trkseg></trk></gpx>");
+        Track track = load(file, RouteFormat.GPX, RouteTiming.TIME, Double.NaN);
+        assertEquals(3, track.size());
+        assertWaypoint(track, 0, 50.1, 8.6, 100, 0);
+        assertWaypoint(track, 1, 50.2, 8.7, 110.5, 60500);
+        assertWaypoint(track, 2, 50.3, 8.7, 0, 90000);
+    }
+
+    @Test
+    public void gpxPointsWithoutTimestampsAreTravelledWithTheDefaultSpeed() throws Exception {
+        File file = createTextFile("route.gpx", "<gpx><rte>"
+                + "<rtept lat=\"50.1\" lon=\"8.6\"/><rtept lat=\"50.2\" lon=\"8.7\"/>"
+                + "</rte></gpx>");
+        Track track = load(file, RouteFormat.GPX, RouteTiming.TIME, 20);
+        assertEquals(2, track.size());
+        long expectedTime = Math.round(GeoMath.getDistance(50.1, 8.6, 50.2, 8.7) / 20 * 1000);
+        assertWaypoint(track, 1, 50.2, 8.7, 0, expectedTime);
+    }
+
+    @Test
+    public void binaryRecordsAreMapped() throws Exception {
+        File file = createFile("route.bin", createBinaryRoute(new double[][]{
+                {50.1, 8.6, 100, 1581936382740L},
+                {50.2, 8.7, 110.25, 1581936442740L},
+        }));
+        Track track = load(file, RouteFormat.BINARY, RouteTiming.TIME, Double.NaN);
+        assertTrue(track instanceof MappedTrack);
+        assertEquals(2, track.size());
+        assertWaypoint(track, 0, 50.1, 8.6, 100, 0);
+        assertWaypoint(track, 1, 50.2, 8.7, 110.25, 60000);
+    }
+
+    @Test
+    public void invalidBinaryRecordStopsTheValidation() throws Exception {
+        File file = createFile("route.bin", createBinaryRoute(new double[][]{
+                {50.1, 8.6, 100, 0},
+                {50.2, 8.7, 110, 60000},
+                {50.3, 8.7, 120, 30000},
+        }));
+        Track track = load(file, RouteFormat.BINARY, RouteTiming.TIME, Double.NaN);
+        assertEquals(2, track.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void binaryFileWithoutTheHeaderIsRejected() throws Exception {
+        byte[] content = createBinaryRoute(new double[][]{{50.1, 8.6, 100, 0}});
+        content[0] = 'X';
+        new TrackLoader(createFile("route.bin", content), RouteFormat.BINARY, RouteTiming.TIME, Double.NaN).load();
+    }
+}
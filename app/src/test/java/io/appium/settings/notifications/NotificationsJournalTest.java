@@ -0,0 +1,163 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.notifications;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Journal tasks are called directly, since the journal thread is not available in JVM tests.
+ */
+public class NotificationsJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static StoredNotification post(NotificationsStore store, NotificationsJournal journal, String key) {
+        StoredNotification item = TestNotifications.create(key);
+        store.add(item);
+        journal.writePosted(item);
+        return item;
+    }
+
+    private static void remove(NotificationsStore store, NotificationsJournal journal, String key) {
+        journal.writeRemoved(store.markRemoved(key));
+    }
+
+    private static NotificationsStore restore(File file) {
+        NotificationsStore store = new NotificationsStore();
+        new NotificationsJournal(file, store).restore();
+        return store;
+    }
+
+    @Test
+    public void restoredItemsKeepTheirSequenceNumbers() throws IOException {
+        File file = folder.newFile();
+        NotificationsStore store = new NotificationsStore();
+        NotificationsJournal journal = new NotificationsJournal(file, store);
+        post(store, journal, "a");
+        post(store, journal, "b");
+        remove(store, journal, "a");
+        post(store, journal, "c");
+        post(store, journal, "b");
+        journal.closeOutput();
+
+        NotificationsSnapshot expected = store.getSnapshot();
+        NotificationsSnapshot restored = restore(file).getSnapshot();
+        assertEquals(expected.getLastSequence(), restored.getLastSequence());
+        assertEquals(expected.size(), restored.size());
+        for (int i = 0; i < expected.size(); i++) {
+            StoredNotification item = expected.toList().get(i);
+            StoredNotification restoredItem = restored.toList().get(i);
+            assertEquals(item.getKey(), restoredItem.getKey());
+            assertEquals(item.getSequence(), restoredItem.getSequence());
+            assertEquals(item.isRemoved(), restoredItem.isRemoved());
+            assertEquals(item.getUpdateCount(), restoredItem.getUpdateCount());
+            assertEquals(item.toJsonString(), restoredItem.toJsonString());
+        }
+        List<StoredNotification> changes = restored.getChangedSince(2);
+        assertEquals(3, changes.size());
+        assertEquals("b", changes.get(0).getKey());
+        assertEquals("c", changes.get(1).getKey());
+        assertEquals("a", changes.get(2).getKey());
+    }
+
+    @Test
+    public void itemsStoredBeforeTheRestoreFollowTheRestoredOnes() throws IOException {
+        File file = folder.newFile();
+        NotificationsStore store = new NotificationsStore();
+        NotificationsJournal journal = new NotificationsJournal(file, store);
+        post(store, journal, "a");
+        post(store, journal, "b");
+        journal.closeOutput();
+
+        NotificationsStore restoredStore = new NotificationsStore();
+        restoredStore.add(TestNotifications.create("c"));
+        restoredStore.add(TestNotifications.create("a"));
+        new NotificationsJournal(file, restoredStore).restore();
+
+        NotificationsSnapshot restored = restoredStore.getSnapshot();
+        assertEquals(3, restored.size());
+        assertEquals(2, restored.get("b").getSequence());
+        assertEquals(3, restored.get("c").getSequence());
+        assertEquals(4, restored.get("a").getSequence());
+        assertEquals(4, restored.getLastSequence());
+        assertEquals("a", restored.toList().get(0).getKey());
+        assertEquals("b", restored.toList().get(2).getKey());
+    }
+
+    @Test
+    public void journalIsCompactedOnceMostRecordsAreOutdated() throws IOException {
+        File file = folder.newFile();
+        NotificationsStore store = new NotificationsStore();
+        NotificationsJournal journal = new NotificationsJournal(file, store);
+        post(store, journal, "a");
+        for (int i = 1; i < NotificationsJournal.MIN_RECORDS_TO_COMPACT; i++) {
+            post(store, journal, "b");
+        }
+        assertEquals(NotificationsJournal.MIN_RECORDS_TO_COMPACT, journal.getRecordsCount());
+        long length = file.length();
+
+        post(store, journal, "b");
+        assertEquals(2, journal.getRecordsCount());
+        assertTrue(file.length() < length);
+        post(store, journal, "c");
+        journal.closeOutput();
+
+        NotificationsSnapshot restored = restore(file).getSnapshot();
+        assertEquals(3, restored.size());
+        assertEquals(store.getSnapshot().getLastSequence(), restored.getLastSequence());
+        assertEquals(NotificationsJournal.MIN_RECORDS_TO_COMPACT - 1, restored.get("b").getUpdateCount());
+    }
+
+    @Test
+    public void truncatedTailRecordIsDropped() throws IOException {
+        File file = folder.newFile();
+        NotificationsStore store = new NotificationsStore();
+        NotificationsJournal journal = new NotificationsJournal(file, store);
+        post(store, journal, "a");
+        post(store, journal, "b");
+        post(store, journal, "c");
+        journal.closeOutput();
+        RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+        try {
+            truncated.setLength(file.length() - 3);
+        } finally {
+            truncated.close();
+        }
+
+        NotificationsStore restoredStore = restore(file);
+        NotificationsSnapshot restored = restoredStore.getSnapshot();
+        assertEquals(2, restored.size());
+        assertEquals(2, restored.getLastSequence());
+        assertFalse(restored.get("a").isRemoved());
+
+        // The incomplete record has been dropped, so the journal is readable again
+        NotificationsSnapshot restoredAgain = restore(file).getSnapshot();
+        assertEquals(2, restoredAgain.size());
+        assertEquals("b", restoredAgain.toList().get(0).getKey());
+    }
+}
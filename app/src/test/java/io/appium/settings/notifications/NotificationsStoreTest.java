@@ -0,0 +1,289 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.notifications;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NotificationsStoreTest {
+    @Test
+    public void addCoalescesItemsWithTheSameKey() {
+        NotificationsStore store = new NotificationsStore();
+        store.add(TestNotifications.create("a"));
+        store.add(TestNotifications.create("b"));
+        StoredNotification update = TestNotifications.create("a");
+        store.add(update);
+
+        NotificationsSnapshot snapshot = store.getSnapshot();
+        assertEquals(2, snapshot.size());
+        assertSame(update, snapshot.toList().get(0));
+        assertEquals(1, update.getUpdateCount());
+        assertEquals(3, snapshot.getLastSequence());
+        assertSame(update, snapshot.get("a"));
+        assertNull(snapshot.get("c"));
+    }
+
+    @Test
+    public void getChangedSinceReturnsTheMostRecentlyChangedItemsFirst() {
+        NotificationsStore store = new NotificationsStore();
+        store.add(TestNotifications.create("a"));
+        store.add(TestNotifications.create("b"));
+        store.add(TestNotifications.create("c"));
+        store.markRemoved("a");
+
+        List<StoredNotification> changes = store.getSnapshot().getChangedSince(1);
+        assertEquals(3, changes.size());
+        assertEquals("a", changes.get(0).getKey());
+        assertTrue(changes.get(0).isRemoved());
+        assertEquals("c", changes.get(1).getKey());
+        assertEquals("b", changes.get(2).getKey());
+        assertTrue(store.getSnapshot().getChangedSince(4).isEmpty());
+    }
+
+    @Test
+    public void getChangedSinceOnlyReturnsTheMostRecentChangeOfEachItem() {
+        NotificationsStore store = new NotificationsStore();
+        store.configure(5, 0, EvictionPolicy.OLDEST_FIRST);
+        for (int i = 0; i < 100; i++) {
+            store.add(TestNotifications.create("key" + i % 10));
+            store.markRemoved("key" + (i + 7) % 10);
+        }
+        NotificationsSnapshot snapshot = store.getSnapshot();
+
+        List<StoredNotification> changes = snapshot.getChangedSince(0);
+        assertEquals(5, changes.size());
+        Set<String> keys = new HashSet<>();
+        long sequence = Long.MAX_VALUE;
+        for (StoredNotification item : changes) {
+            assertTrue(keys.add(item.getKey()));
+            assertSame(item, snapshot.get(item.getKey()));
+            assertTrue(item.getSequence() < sequence);
+            sequence = item.getSequence();
+        }
+        assertTrue(changes.get(0).isRemoved());
+        assertEquals(snapshot.getLastSequence(), changes.get(0).getSequence());
+        assertEquals(1, snapshot.getChangedSince(snapshot.getLastSequence() - 1).size());
+    }
+
+    @Test
+    public void removedItemsAreEvictedFirst() {
+        NotificationsStore store = new NotificationsStore();
+        store.configure(3, 0, EvictionPolicy.REMOVED_FIRST);
+        store.add(TestNotifications.create("a"));
+        store.add(TestNotifications.create("b"));
+        store.add(TestNotifications.create("c"));
+        store.markRemoved("b");
+
+        assertEquals(1, store.add(TestNotifications.create("d")));
+        NotificationsSnapshot snapshot = store.getSnapshot();
+        assertEquals(3, snapshot.size());
+        assertNull(snapshot.get("b"));
+        assertNotNull(snapshot.get("a"));
+        assertEquals(1, snapshot.getUsage().getEvictedCount());
+    }
+
+    @Test
+    public void markRemovedKeepsTheMemoryBudget() {
+        NotificationsStore store = new NotificationsStore();
+        store.configure(NotificationsStore.DEFAULT_CAPACITY, 0, EvictionPolicy.OLDEST_FIRST);
+        store.add(TestNotifications.create("z"));
+        store.add(TestNotifications.create("a"));
+        for (int i = 3; i < 100; i++) {
+            store.add(TestNotifications.create("key" + i));
+        }
+        long maxBytes = store.getSnapshot().getUsage().getRetainedBytes();
+        store.configure(NotificationsStore.DEFAULT_CAPACITY, maxBytes, EvictionPolicy.OLDEST_FIRST);
+        assertEquals(0, store.getSnapshot().getUsage().getEvictedCount());
+
+        // The cached JSON of the removed item grows, since its sequence number gets longer
+        StoredNotification removed = store.markRemoved("a");
+        assertNotNull(removed);
+        assertEquals(100, removed.getSequence());
+        NotificationsSnapshot snapshot = store.getSnapshot();
+        assertEquals(1, snapshot.getUsage().getEvictedCount());
+        assertTrue(snapshot.getUsage().getRetainedBytes() <= maxBytes);
+        assertNull(snapshot.get("z"));
+        assertSame(removed, snapshot.get("a"));
+    }
+
+    @Test
+    public void publishedSnapshotsKeepTheirContent() {
+        NotificationsStore store = new NotificationsStore();
+        store.add(TestNotifications.create("a"));
+        store.add(TestNotifications.create("b"));
+        NotificationsSnapshot snapshot = store.getSnapshot();
+        assertSame(snapshot, store.getSnapshot());
+
+        store.markRemoved("a");
+        store.add(TestNotifications.create("b"));
+        store.add(TestNotifications.create("c"));
+        assertEquals(3, store.size());
+        NotificationsSnapshot changed = store.getSnapshot();
+        assertNotSame(snapshot, changed);
+        assertEquals(2, snapshot.size());
+        assertEquals(2, snapshot.toList().size());
+        assertEquals("b", snapshot.toList().get(0).getKey());
+        assertEquals(0, snapshot.get("b").getUpdateCount());
+        assertFalse(snapshot.get("a").isRemoved());
+        assertEquals(3, changed.size());
+        assertEquals("c", changed.toList().get(0).getKey());
+        assertEquals(1, changed.get("b").getUpdateCount());
+        assertTrue(changed.get("a").isRemoved());
+    }
+
+    @Test
+    public void snapshotsSurviveTheLogCompaction() {
+        NotificationsStore store = new NotificationsStore();
+        store.configure(3, 0, EvictionPolicy.OLDEST_FIRST);
+        store.add(TestNotifications.create("a"));
+        NotificationsSnapshot snapshot = store.getSnapshot();
+        for (int i = 0; i < 1000; i++) {
+            store.add(TestNotifications.create("key" + i));
+        }
+
+        assertEquals(1, snapshot.size());
+        assertEquals("a", snapshot.toList().get(0).getKey());
+        List<StoredNotification> items = store.getSnapshot().toList();
+        assertEquals(3, items.size());
+        assertEquals("key999", items.get(0).getKey());
+        assertEquals("key997", items.get(2).getKey());
+    }
+
+    @Test(timeout = 10000)
+    public void readersDoNotLockTheStore() throws Exception {
+        final NotificationsStore store = new NotificationsStore();
+        store.add(TestNotifications.create("a"));
+        final AtomicReference<NotificationsSnapshot> snapshot = new AtomicReference<>();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                snapshot.set(store.getSnapshot());
+                store.size();
+                store.getCapacity();
+            }
+        });
+        //noinspection SynchronizationOnLocalVariableOrMethodParameter
+        synchronized (store) {
+            reader.start();
+            reader.join();
+        }
+        assertEquals(1, snapshot.get().size());
+    }
+
+    @Test
+    public void readersObserveConsistentSnapshotsWhileWritersChangeTheStore() throws Exception {
+        final int capacity = 500;
+        final int keysCount = 2000;
+        final int writesCount = 50000;
+        final NotificationsStore store = new NotificationsStore();
+        store.configure(capacity, 0, EvictionPolicy.REMOVED_FIRST);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicBoolean isWriting = new AtomicBoolean(true);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    start.await();
+                    for (int i = 0; i < writesCount; i++) {
+                        String key = "key" + (i * 7919 % keysCount);
+                        if (i % 5 == 4) {
+                            store.markRemoved(key);
+                        } else {
+                            store.add(TestNotifications.create(key));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    isWriting.set(false);
+                }
+            }
+        });
+        Thread[] readers = new Thread[3];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        long previousSequence = 0;
+                        while (isWriting.get() && failure.get() == null) {
+                            NotificationsSnapshot snapshot = store.getSnapshot();
+                            verify(snapshot, capacity, previousSequence);
+                            previousSequence = snapshot.getLastSequence();
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+        }
+
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        start.countDown();
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        verify(store.getSnapshot(), capacity, 0);
+    }
+
+    private static void verify(NotificationsSnapshot snapshot, int capacity, long previousSequence) {
+        long lastSequence = snapshot.getLastSequence();
+        if (lastSequence < previousSequence) {
+            fail(String.format("The sequence went back from %s to %s", previousSequence, lastSequence));
+        }
+        List<StoredNotification> items = snapshot.toList();
+        assertTrue(items.size() <= capacity);
+        Set<String> keys = new HashSet<>();
+        for (StoredNotification item : items) {
+            assertTrue("Duplicate key " + item.getKey(), keys.add(item.getKey()));
+            assertTrue(item.getSequence() <= lastSequence);
+            assertSame(item, snapshot.get(item.getKey()));
+        }
+        long since = lastSequence - capacity / 2;
+        long sequence = Long.MAX_VALUE;
+        for (StoredNotification item : snapshot.getChangedSince(since)) {
+            assertTrue(item.getSequence() > since);
+            assertTrue(item.getSequence() < sequence);
+            sequence = item.getSequence();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.notifications;
+
+import android.app.Notification;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Process;
+import android.service.notification.StatusBarNotification;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the heap retained by a posted notification with the heap retained by its compact record.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P)
+public class StoredNotificationFootprintTest {
+    // Rough sizes of a 64-bit VM with compressed references
+    private static final int OBJECT_HEADER_BYTES = 12;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+    private static final int PAYLOAD_BYTES = 256 * 1024;
+
+    private static int getPrimitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static boolean isShared(Object value) {
+        return value instanceof Class || value instanceof ClassLoader || value instanceof Thread
+                || value instanceof Reference || value instanceof Context;
+    }
+
+    /**
+     * @return the estimated size of all objects reachable from the given one in bytes
+     */
+    private static long getReachableSize(Object root) {
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        long size = 0;
+        while (!pending.isEmpty()) {
+            Object value = pending.pop();
+            if (!visited.add(value) || isShared(value)) {
+                continue;
+            }
+            Class<?> type = value.getClass();
+            if (value instanceof String) {
+                // String internals differ between VMs, so the Android layout is assumed
+                size += OBJECT_HEADER_BYTES + 8 + ARRAY_HEADER_BYTES + 2 * ((String) value).length();
+            } else if (type.isArray()) {
+                int length = Array.getLength(value);
+                Class<?> componentType = type.getComponentType();
+                if (componentType.isPrimitive()) {
+                    size += ARRAY_HEADER_BYTES + (long) length * getPrimitiveSize(componentType);
+                } else {
+                    size += ARRAY_HEADER_BYTES + (long) length * REFERENCE_BYTES;
+                    for (int i = 0; i < length; i++) {
+                        Object item = Array.get(value, i);
+                        if (item != null) {
+                            pending.push(item);
+                        }
+                    }
+                }
+            } else {
+                size += OBJECT_HEADER_BYTES;
+                for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        if (Modifier.isStatic(field.getModifiers())) {
+                            continue;
+                        }
+                        if (field.getType().isPrimitive()) {
+                            size += getPrimitiveSize(field.getType());
+                            continue;
+                        }
+                        size += REFERENCE_BYTES;
+                        Object child;
+                        try {
+                            field.setAccessible(true);
+                            child = field.get(value);
+                        } catch (RuntimeException | IllegalAccessException e) {
+                            // Internals of some platform classes are not accessible on newer VMs
+                            continue;
+                        }
+                        if (child != null) {
+                            pending.push(child);
+                        }
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    private static String repeat(String value, int count) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            result.append(value);
+        }
+        return result.toString();
+    }
+
+    private static StatusBarNotification createImageHeavyNotification() {
+        Context context = RuntimeEnvironment.application;
+        Bundle extras = new Bundle();
+        // Stands for pictures and other payloads apps put into extras
+        extras.putByteArray("com.example.picture", new byte[PAYLOAD_BYTES]);
+        //noinspection deprecation
+        Notification notification = new Notification.Builder(context)
+                .setSmallIcon(android.R.drawable.ic_dialog_info)
+                .setContentTitle("New photo")
+                .setContentText("Somebody has shared a photo with you")
+                .setLargeIcon(Bitmap.createBitmap(256, 256, Bitmap.Config.ARGB_8888))
+                .setStyle(new Notification.BigTextStyle().bigText(repeat("A long description. ", 50)))
+                .addExtras(extras)
+                .build();
+        //noinspection deprecation
+        return new StatusBarNotification(context.getPackageName(), context.getPackageName(), 1, "tag",
+                Process.myUid(), Process.myPid(), 0, notification, Process.myUserHandle(),
+                System.currentTimeMillis());
+    }
+
+    @Test
+    public void compactRecordDoesNotRetainNotificationPayloads() {
+        StatusBarNotification sbn = createImageHeavyNotification();
+        StoredNotification item = new StoredNotification(sbn);
+        long sbnSize = getReachableSize(sbn);
+        long itemSize = getReachableSize(item);
+        String sizes = String.format("StatusBarNotification: %s bytes, StoredNotification: %s bytes "
+                + "(%s bytes estimated)", sbnSize, itemSize, item.getRetainedSize());
+
+        assertTrue(sizes, sbnSize > PAYLOAD_BYTES);
+        assertTrue(sizes, itemSize * 20 < sbnSize);
+        // The estimation is used for the buffer memory budget, so it must stay close to the actual size
+        assertTrue(sizes, item.getRetainedSize() > itemSize * 0.8);
+        assertTrue(sizes, item.getRetainedSize() < itemSize * 2);
+    }
+}
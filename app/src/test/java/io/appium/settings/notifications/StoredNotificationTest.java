@@ -0,0 +1,62 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.notifications;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StoredNotificationTest {
+    private static String getPrefix(String json) {
+        return json.substring(0, json.indexOf(",\"isRemoved\":"));
+    }
+
+    @Test
+    public void cachedJsonIsPatchedOnStateChanges() {
+        StoredNotification item = TestNotifications.create("0|com.example|1|null|0", "com.example",
+                "Title", "Text with \"quotes\"");
+        String initialJson = item.toJsonString();
+        assertTrue(initialJson, initialJson.startsWith("{\"packageName\":\"com.example\""));
+        assertTrue(initialJson, initialJson.contains("\"text\":\"Text with \\\"quotes\\\"\""));
+        assertTrue(initialJson, initialJson.endsWith(",\"isRemoved\":false,\"sequence\":0,\"updateCount\":0}"));
+
+        item.setSequence(5);
+        item.setUpdateCount(2);
+        assertEquals(getPrefix(initialJson) + ",\"isRemoved\":false,\"sequence\":5,\"updateCount\":2}",
+                item.toJsonString());
+
+        StoredNotification removed = item.toRemoved(7);
+        assertEquals(getPrefix(initialJson) + ",\"isRemoved\":true,\"sequence\":7,\"updateCount\":2}",
+                removed.toJsonString());
+        assertEquals(getPrefix(initialJson) + ",\"isRemoved\":false,\"sequence\":5,\"updateCount\":2}",
+                item.toJsonString());
+    }
+
+    @Test
+    public void serializedPropertiesAreOnlyChargedOnce() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            text.append('x');
+        }
+        StoredNotification item = TestNotifications.create("key", "com.example", null, text.toString());
+        // The text is retained as a field and as a part of the cached JSON, both take 2 bytes per char
+        int retainedSize = item.getRetainedSize();
+        assertTrue(String.valueOf(retainedSize), retainedSize > 4 * text.length());
+        assertTrue(String.valueOf(retainedSize), retainedSize < 5 * text.length());
+    }
+}
@@ -0,0 +1,46 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.notifications;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class StoredNotificationsTest {
+    @Test
+    public void configuredLimitsAreReportedWhileTheListenerIsNotBound() {
+        StoredNotifications storedNotifications = StoredNotifications.getInstance();
+        try {
+            storedNotifications.configureBuffer(500, 0, EvictionPolicy.OLDEST_FIRST);
+            // A partial update keeps the other configured limits
+            storedNotifications.configureBuffer(storedNotifications.getBufferCapacity(), 1024,
+                    storedNotifications.getEvictionPolicy());
+
+            assertEquals(500, storedNotifications.getBufferCapacity());
+            assertEquals(1024, storedNotifications.getBufferMaxBytes());
+            assertEquals(EvictionPolicy.OLDEST_FIRST, storedNotifications.getEvictionPolicy());
+            NotificationsSnapshot.Usage usage = storedNotifications.getSnapshot().getUsage();
+            assertEquals(500, usage.getCapacity());
+            assertEquals(1024, usage.getMaxBytes());
+            assertEquals(EvictionPolicy.OLDEST_FIRST, usage.getEvictionPolicy());
+            assertEquals(0, storedNotifications.getSnapshot().size());
+        } finally {
+            storedNotifications.configureBuffer(NotificationsStore.DEFAULT_CAPACITY, 0,
+                    EvictionPolicy.REMOVED_FIRST);
+        }
+    }
+}
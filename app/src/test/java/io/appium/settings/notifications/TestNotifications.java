@@ -0,0 +1,82 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.notifications;
+
+import android.support.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Builds stored notifications without Android framework classes by
+ * serializing them in the format understood by {@link StoredNotification#readFrom}.
+ */
+class TestNotifications {
+    private TestNotifications() {
+    }
+
+    private static void writeString(DataOutputStream output, @Nullable String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            byte[] bytes = value.getBytes("UTF-8");
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    static StoredNotification create(String key, String packageName, @Nullable String title,
+                                     @Nullable String text) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            writeString(output, key);
+            writeString(output, packageName);
+            output.writeBoolean(true);
+            output.writeBoolean(false);
+            output.writeInt(key.hashCode());
+            writeString(output, null);
+            output.writeLong(System.currentTimeMillis());
+            output.writeBoolean(true);
+            writeString(output, title);
+            writeString(output, null);
+            writeString(output, text);
+            writeString(output, null);
+            writeString(output, null);
+            writeString(output, null);
+            writeString(output, null);
+            writeString(output, "android.app.Notification$BigTextStyle");
+            output.writeBoolean(false);
+            output.writeInt(0);
+            writeString(output, null);
+            writeString(output, null);
+            writeString(output, key);
+            output.writeBoolean(false);
+            output.writeInt(0);
+            output.flush();
+            return StoredNotification.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static StoredNotification create(String key) {
+        return create(key, "com.example", "Title " + key, "Text " + key);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.receivers;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Bundle;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import io.appium.settings.helpers.ResultTag;
+import io.appium.settings.sms.FakeSmsProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * The SMS cache is not running in these tests, so results and tags come from the provider.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SmsReaderTest {
+    private static final String TAG_EXTRA = "etag";
+
+    private static class Result extends BroadcastReceiver {
+        int code;
+        String data;
+        Bundle extras;
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            code = getResultCode();
+            data = getResultData();
+            extras = getResultExtras(false);
+        }
+
+        @Nullable
+        String getTag() {
+            return extras == null ? null : extras.getString(TAG_EXTRA);
+        }
+    }
+
+    private Context context;
+    private SmsReader reader;
+
+    @Before
+    public void setUp() {
+        FakeSmsProvider.ROWS.clear();
+        Robolectric.setupContentProvider(FakeSmsProvider.class, "sms");
+        context = RuntimeEnvironment.application;
+        reader = new SmsReader();
+        context.registerReceiver(reader, new IntentFilter(reader.getAction()));
+    }
+
+    @After
+    public void tearDown() {
+        context.unregisterReceiver(reader);
+    }
+
+    /**
+     * @param extras pairs of extra names and values
+     */
+    private Result read(String... extras) {
+        Intent intent = new Intent(reader.getAction());
+        for (int i = 0; i < extras.length; i += 2) {
+            intent.putExtra(extras[i], extras[i + 1]);
+        }
+        Result result = new Result();
+        context.sendOrderedBroadcast(intent, null, result, null, Activity.RESULT_CANCELED, null, null);
+        shadowOf(Looper.getMainLooper()).idle();
+        return result;
+    }
+
+    @Test
+    public void unchangedInboxIsNotModified() {
+        FakeSmsProvider.ROWS.add(FakeSmsProvider.row(1));
+        Result first = read("etag", "true");
+        assertEquals(Activity.RESULT_OK, first.code);
+        assertTrue(first.data.contains("Message 1"));
+        String tag = first.getTag();
+        assertNotNull(tag);
+
+        Result second = read("ifNoneMatch", tag);
+        assertEquals(ResultTag.NOT_MODIFIED, second.code);
+        assertEquals("", second.data);
+        assertEquals(tag, second.getTag());
+    }
+
+    @Test
+    public void tagChangesOnceAMessageIsReceived() {
+        FakeSmsProvider.ROWS.add(FakeSmsProvider.row(1));
+        String tag = read("etag", "true").getTag();
+        FakeSmsProvider.ROWS.add(FakeSmsProvider.row(2));
+
+        Result result = read("ifNoneMatch", tag);
+        assertEquals(Activity.RESULT_OK, result.code);
+        assertTrue(result.data.contains("Message 2"));
+        assertNotNull(result.getTag());
+        assertFalse(tag.equals(result.getTag()));
+    }
+
+    @Test
+    public void tagDependsOnTheRequest() {
+        FakeSmsProvider.ROWS.add(FakeSmsProvider.row(1));
+        FakeSmsProvider.ROWS.add(FakeSmsProvider.row(2));
+        String tag = read("etag", "true", "max", "1").getTag();
+        assertNotNull(tag);
+
+        Result result = read("ifNoneMatch", tag, "max", "2");
+        assertEquals(Activity.RESULT_OK, result.code);
+        assertTrue(result.data.contains("Message 1"));
+        assertEquals(ResultTag.NOT_MODIFIED, read("ifNoneMatch", tag, "max", "1").code);
+    }
+
+    @Test
+    public void tagIsOnlyComputedOnRequest() {
+        FakeSmsProvider.ROWS.add(FakeSmsProvider.row(1));
+        Result result = read("max", "1");
+        assertEquals(Activity.RESULT_OK, result.code);
+        assertNull(result.getTag());
+    }
+}
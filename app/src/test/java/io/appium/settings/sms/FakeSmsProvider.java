@@ -0,0 +1,90 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.sms;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.annotation.Nullable;
+import io.appium.settings.helpers.InMemoryTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * SMS provider backed by in-memory rows, which are only changed by tests.
+ * Register it with Robolectric.setupContentProvider(FakeSmsProvider.class, "sms").
+ */
+public class FakeSmsProvider extends ContentProvider {
+    // Rows of StoredSms.PROJECTION columns
+    public static final List<Object[]> ROWS = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param id the message id
+     * @return the row of an incoming message, whose date grows with its id
+     */
+    public static Object[] row(long id) {
+        return new Object[]{id, "+123456789", null, 1581936382740L + id * 1000, 0, -1, 1, null,
+                "Message " + id, null};
+    }
+
+    public static void delete(long id) {
+        for (Object[] row : ROWS) {
+            if ((Long) row[0] == id) {
+                ROWS.remove(row);
+            }
+        }
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(Uri uri, @Nullable String[] projection, @Nullable String selection,
+                        @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        return InMemoryTable.query(StoredSms.PROJECTION, new ArrayList<>(ROWS), projection,
+                selection, selectionArgs, sortOrder);
+    }
+
+    @Nullable
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(Uri uri, @Nullable ContentValues values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int delete(Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int update(Uri uri, @Nullable ContentValues values, @Nullable String selection,
+                      @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.sms;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.LooperMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The cache processes provider changes on its own thread, so loopers must run like on a device.
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class SmsCacheTest {
+    private static final long TIMEOUT_MS = 5000;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        FakeSmsProvider.ROWS.clear();
+        Robolectric.setupContentProvider(FakeSmsProvider.class, "sms");
+        context = RuntimeEnvironment.application;
+    }
+
+    @After
+    public void tearDown() {
+        SmsCache.getInstance().stop();
+    }
+
+    private void receive(long id) {
+        FakeSmsProvider.ROWS.add(FakeSmsProvider.row(id));
+        context.getContentResolver().notifyChange(Uri.parse("content://sms/" + id), null);
+    }
+
+    private void delete(long id) {
+        FakeSmsProvider.delete(id);
+        context.getContentResolver().notifyChange(Uri.parse("content://sms/" + id), null);
+    }
+
+    private SmsCache.Snapshot awaitFreshSnapshot(int size, long lastId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (true) {
+            SmsCache.Snapshot snapshot = SmsCache.getInstance().getFreshSnapshot(context);
+            if (snapshot != null && snapshot.getItems().size() == size
+                    && snapshot.getItems().get(0).getId() == lastId) {
+                return snapshot;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                fail(String.format("The cache has not got %s messages up to %s in %sms", size, lastId, TIMEOUT_MS));
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void newMessagesAreAddedToTheCache() throws InterruptedException {
+        FakeSmsProvider.ROWS.add(FakeSmsProvider.row(1));
+        FakeSmsProvider.ROWS.add(FakeSmsProvider.row(2));
+        SmsCache.getInstance().start(context);
+        SmsCache.Snapshot snapshot = awaitFreshSnapshot(2, 2);
+        assertTrue(snapshot.isComplete());
+
+        receive(3);
+        SmsCache.Snapshot updated = awaitFreshSnapshot(3, 3);
+        assertTrue(updated.isComplete());
+        assertEquals("Message 3", updated.getItems().get(0).getBody());
+        assertEquals(1, updated.getItems().get(2).getId());
+        assertFalse(snapshot.getVersion().equals(updated.getVersion()));
+    }
+
+    @Test
+    public void cacheIsNotServedBeforeTheNewestMessageIsReported() throws InterruptedException {
+        FakeSmsProvider.ROWS.add(FakeSmsProvider.row(1));
+        SmsCache.getInstance().start(context);
+        awaitFreshSnapshot(1, 1);
+
+        FakeSmsProvider.ROWS.add(FakeSmsProvider.row(2));
+        assertNull(SmsCache.getInstance().getFreshSnapshot(context));
+        assertNotNull(SmsCache.getInstance().getSnapshot());
+
+        context.getContentResolver().notifyChange(Uri.parse("content://sms/2"), null);
+        awaitFreshSnapshot(2, 2);
+    }
+
+    @Test
+    public void deletedMessagesAreRemovedFromTheCache() throws InterruptedException {
+        FakeSmsProvider.ROWS.add(FakeSmsProvider.row(1));
+        FakeSmsProvider.ROWS.add(FakeSmsProvider.row(2));
+        FakeSmsProvider.ROWS.add(FakeSmsProvider.row(3));
+        SmsCache.getInstance().start(context);
+        awaitFreshSnapshot(3, 3);
+
+        delete(2);
+        SmsCache.Snapshot snapshot = awaitFreshSnapshot(2, 3);
+        assertEquals(1, snapshot.getItems().get(1).getId());
+    }
+
+    @Test
+    public void onlyTheMostRecentMessagesAreKept() throws InterruptedException {
+        int count = SmsCache.CAPACITY + 5;
+        for (int id = 1; id <= count; id++) {
+            FakeSmsProvider.ROWS.add(FakeSmsProvider.row(id));
+        }
+        SmsCache.getInstance().start(context);
+        SmsCache.Snapshot snapshot = awaitFreshSnapshot(SmsCache.CAPACITY, count);
+        assertFalse(snapshot.isComplete());
+        assertEquals(6, snapshot.getItems().get(SmsCache.CAPACITY - 1).getId());
+
+        receive(count + 1);
+        snapshot = awaitFreshSnapshot(SmsCache.CAPACITY, count + 1);
+        assertFalse(snapshot.isComplete());
+        assertEquals(7, snapshot.getItems().get(SmsCache.CAPACITY - 1).getId());
+    }
+}
@@ -0,0 +1,60 @@
+/*
+  Copyright 2012-present Appium Committers
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.appium.settings.sms;
+
+import android.database.MatrixCursor;
+
+import io.appium.settings.helpers.JsonResponseWriter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class StoredSmsTest {
+    private static final String EXPECTED_JSON = "{\"id\":\"2\",\"address\":\"+123456789\",\"person\":null,"
+            + "\"date\":\"1581936384740\",\"read\":\"0\",\"status\":\"-1\",\"type\":\"1\",\"subject\":null,"
+            + "\"body\":\"Message 2\",\"serviceCenter\":null}";
+
+    private static MatrixCursor createCursor() {
+        MatrixCursor cursor = new MatrixCursor(StoredSms.PROJECTION);
+        cursor.addRow(FakeSmsProvider.row(2));
+        cursor.moveToFirst();
+        return cursor;
+    }
+
+    @Test
+    public void cursorRowIsWrittenWithStringValues() {
+        MatrixCursor cursor = createCursor();
+        JsonResponseWriter writer = new JsonResponseWriter();
+        StoredSms.writeRow(cursor, StoredSms.getColumnIndexes(cursor), writer);
+        assertEquals(EXPECTED_JSON, writer.toString());
+    }
+
+    @Test
+    public void copiedRowIsWrittenLikeTheCursorRow() {
+        MatrixCursor cursor = createCursor();
+        StoredSms sms = StoredSms.fromCursor(cursor, StoredSms.getColumnIndexes(cursor));
+        JsonResponseWriter writer = new JsonResponseWriter();
+        sms.writeTo(writer);
+        assertEquals(EXPECTED_JSON, writer.toString());
+        assertEquals(2, sms.getId());
+        assertEquals(1581936384740L, sms.getDate());
+    }
+}